@@ -0,0 +1,135 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests of the user rules dao working with a separate test database
+ */
+public class UserRuleDaoImplTest extends AndroidTestCase {
+
+    private static final String DB_NAME = "adguard.db";
+
+    private RenamingDelegatingContext context;
+    private DbHelper dbHelper;
+    private UserRuleDaoImpl userRuleDao;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        context = new RenamingDelegatingContext(getContext(), "test_");
+        context.deleteDatabase(DB_NAME);
+        dbHelper = new DbHelper(context);
+        userRuleDao = new UserRuleDaoImpl(dbHelper, UserRuleDaoImpl.USER_RULES_TABLE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        userRuleDao.flushRuleStates();
+        dbHelper.close();
+        context.deleteDatabase(DB_NAME);
+        super.tearDown();
+    }
+
+    public void testRulesArePagedInInsertionOrder() {
+        userRuleDao.insertRules(Arrays.asList("||a.com^", "||b.com^", "||c.com^", "||d.com^", "||e.com^"));
+        userRuleDao.insertRule("||f.com^");
+        userRuleDao.insertRule("||a.com^");
+
+        assertEquals(6, userRuleDao.getRuleCount());
+        assertEquals(Arrays.asList("||a.com^", "||b.com^"), userRuleDao.selectRuleTexts(0, 2));
+        assertEquals(Arrays.asList("||c.com^", "||d.com^"), userRuleDao.selectRuleTexts(2, 2));
+        assertEquals(Arrays.asList("||e.com^", "||f.com^"), userRuleDao.selectRuleTexts(4, 2));
+        assertTrue(userRuleDao.selectRuleTexts(6, 2).isEmpty());
+    }
+
+    public void testPagesFollowRemovedAndEditedRules() {
+        userRuleDao.insertRules(Arrays.asList("||a.com^", "||b.com^", "||c.com^", "||d.com^"));
+        userRuleDao.removeRule("||b.com^");
+        userRuleDao.updateRuleText("||c.com^", "||c.org^");
+
+        assertEquals(Arrays.asList("||a.com^", "||c.org^"), userRuleDao.selectRuleTexts(0, 2));
+        assertEquals(Collections.singletonList("||d.com^"), userRuleDao.selectRuleTexts(2, 2));
+    }
+
+    public void testEnabledStatesAreBufferedUntilFlush() {
+        userRuleDao.insertRules(Arrays.asList("||a.com^", "||b.com^", "||c.com^"));
+        userRuleDao.updateRuleEnabled("||a.com^", false);
+        userRuleDao.updateRuleEnabled("||b.com^", false);
+        userRuleDao.updateRuleEnabled("||b.com^", true);
+
+        // Nothing is written until the flush
+        assertTrue(isEnabledInDb("||a.com^"));
+
+        userRuleDao.flushRuleStates();
+        assertFalse(isEnabledInDb("||a.com^"));
+        assertTrue(isEnabledInDb("||b.com^"));
+        assertTrue(isEnabledInDb("||c.com^"));
+    }
+
+    public void testPendingStatesAreFlushedBeforeReads() {
+        userRuleDao.insertRules(Arrays.asList("||a.com^", "||b.com^", "||c.com^"));
+        userRuleDao.updateRuleEnabled("||b.com^", false);
+
+        assertEquals(Collections.singleton("||b.com^"), userRuleDao.selectDisabledRuleTexts());
+        assertEquals(Arrays.asList("||a.com^", "||c.com^"), userRuleDao.selectEnabledRuleTexts());
+    }
+
+    public void testPendingStatesAreFlushedBeforeStructuralChanges() {
+        userRuleDao.insertRules(Arrays.asList("||a.com^", "||b.com^"));
+        userRuleDao.updateRuleEnabled("||a.com^", false);
+        userRuleDao.updateRuleText("||a.com^", "||a.org^");
+        userRuleDao.insertRule("||c.com^");
+
+        assertFalse(isEnabledInDb("||a.org^"));
+        assertTrue(isEnabledInDb("||c.com^"));
+
+        // Disabled state is kept when the rules are replaced
+        userRuleDao.replaceRules(Arrays.asList("||c.com^", "||a.org^"));
+        assertEquals(Collections.singleton("||a.org^"), userRuleDao.selectDisabledRuleTexts());
+        assertEquals(Arrays.asList("||c.com^", "||a.org^"), userRuleDao.selectRuleTexts());
+    }
+
+    public void testRulesAreEnabledInBulk() {
+        userRuleDao.insertRules(Arrays.asList("||a.com^", "||b.com^", "||c.com^"));
+        userRuleDao.updateRulesEnabled(Arrays.asList("||a.com^", "||c.com^"), false);
+
+        assertFalse(isEnabledInDb("||a.com^"));
+        assertTrue(isEnabledInDb("||b.com^"));
+        assertFalse(isEnabledInDb("||c.com^"));
+    }
+
+    /**
+     * Reads the enabled state from the table bypassing the dao buffers
+     */
+    private boolean isEnabledInDb(String ruleText) {
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+                "SELECT enabled FROM " + UserRuleDaoImpl.USER_RULES_TABLE + " WHERE rule_text=?", new String[]{ruleText});
+        try {
+            assertTrue("No rule " + ruleText, cursor.moveToFirst());
+            return cursor.getInt(0) == 1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -16,47 +16,183 @@
  */
 package com.adguard.android.contentblocker;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
 import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
 
 import androidx.annotation.NonNull;
 
+import com.adguard.android.contentblocker.commons.concurrent.ExecutorsPool;
+import com.adguard.android.contentblocker.commons.io.IoUtils;
+import com.adguard.android.contentblocker.model.FilterList;
+import com.adguard.android.contentblocker.service.FilterService;
+import com.adguard.android.contentblocker.service.compiler.CompileProfile;
+import com.adguard.android.contentblocker.service.compiler.CompileResult;
+import com.adguard.android.contentblocker.service.compiler.FiltersCompiler;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 
 public class FiltersContentProvider extends ContentProvider {
 
-    private static final String FILTERS_FILE_PATH = "/filters.txt";
+    private static final Logger LOG = LoggerFactory.getLogger(FiltersContentProvider.class);
+
+    // Default filters compiled at build time, see generatePrebuiltFilters task
+    private static final String PREBUILT_FILTERS_ASSET = "prebuilt_filters.txt";
+    private static final String PREBUILT_SNAPSHOT_ASSET = "prebuilt_filters.properties";
+
+    public static final String AUTHORITY = "com.adguard.android.contentblocker.contentBlocker.contentProvider";
+    public static final String PATH_SNAPSHOT = "snapshot";
+    public static final String PATH_FILTERS = "filters";
+    public static final String PATH_GZIP = "gzip";
+
+    public static final String MIME_TYPE_TEXT = "text/plain";
+    public static final String MIME_TYPE_GZIP = "application/gzip";
+
+    public static final String COLUMN_VERSION = "version";
+    public static final String COLUMN_CHECKSUM = "checksum";
+    public static final String COLUMN_RULE_COUNT = "rule_count";
+    public static final String COLUMN_TIMESTAMP = "timestamp";
+    public static final String COLUMN_FILTER_ID = "_id";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_TIME_UPDATED = "time_updated";
+
+    private static final String[] SNAPSHOT_COLUMNS = {COLUMN_VERSION, COLUMN_CHECKSUM, COLUMN_RULE_COUNT, COLUMN_TIMESTAMP};
+    private static final String[] FILTERS_COLUMNS = {COLUMN_FILTER_ID, COLUMN_NAME, COLUMN_VERSION, COLUMN_TIME_UPDATED};
 
-    private String filtersPath;
+    private static final int MATCH_SNAPSHOT = 1;
+    private static final int MATCH_FILTERS = 2;
+    private static final int MATCH_GZIP = 3;
+    private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
 
+    static {
+        URI_MATCHER.addURI(AUTHORITY, null, MATCH_SNAPSHOT);
+        URI_MATCHER.addURI(AUTHORITY, PATH_SNAPSHOT, MATCH_SNAPSHOT);
+        URI_MATCHER.addURI(AUTHORITY, PATH_FILTERS, MATCH_FILTERS);
+        URI_MATCHER.addURI(AUTHORITY, PATH_GZIP, MATCH_GZIP);
+    }
+
+    private final Set<CompileProfile> compileScheduled = Collections.synchronizedSet(EnumSet.noneOf(CompileProfile.class));
+
+    /**
+     * Opens the filters file compiled for the calling browser.
+     * content://{@value #AUTHORITY}/{@value #PATH_GZIP} opens its gzip-compressed variant,
+     * any other uri opens the plain text file.
+     */
     @Override
     public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
-        File filterFile = new File(filtersPath);
-        if (!filterFile.exists()) {
-            ServiceLocator.getInstance(getContext()).getFilterService().applyNewSettings();
+        final FilterService filterService = ServiceLocator.getInstance(getContext()).getFilterService();
+        final CompileProfile profile = getCallingProfile();
+        if (URI_MATCHER.match(uri) == MATCH_GZIP) {
+            return openCompressedFile(filterService, profile);
+        }
+
+        File filterFile = filterService.getFiltersFile(profile);
+        if (filterFile.exists()) {
+            // Filters file is replaced atomically, so the descriptor points to a complete snapshot
+            // which stays readable until it is closed, even if a new one is published meanwhile
+            return ParcelFileDescriptor.open(filterFile, ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+
+        // Filters are not compiled yet. Compiling them takes a while, so we don't do it on the binder thread:
+        // the browser gets a pipe right away and reads the rules as soon as they are compiled.
+        // Prebuilt filters are served only to the default profile consumers on the first run,
+        // when nothing has been compiled yet.
+        ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createReliablePipe();
+        } catch (IOException ex) {
+            LOG.error("Cannot create pipe for the filters", ex);
+            throw new FileNotFoundException("Cannot create pipe: " + ex.getMessage());
         }
 
-        return ParcelFileDescriptor.open(filterFile, ParcelFileDescriptor.MODE_READ_ONLY);
+        final ParcelFileDescriptor writeSide = pipe[1];
+        final InputStream prebuiltFilters = openPrebuiltAsset(filterService, profile, PREBUILT_FILTERS_ASSET);
+        if (prebuiltFilters == null) {
+            ExecutorsPool.getCachedExecutorService().submit(() -> writeFilters(filterService, profile, writeSide));
+        } else {
+            ExecutorsPool.getCachedExecutorService().submit(() -> writePrebuiltFilters(prebuiltFilters, writeSide));
+            scheduleCompilation(filterService, profile);
+        }
+        return pipe[0];
+    }
+
+    /**
+     * Opens the filters file of the requested type.
+     * Clients that accept {@value #MIME_TYPE_GZIP} but not {@value #MIME_TYPE_TEXT} get the compressed file.
+     */
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(@NonNull Uri uri, @NonNull String mimeTypeFilter, Bundle opts) throws FileNotFoundException {
+        if (ClipDescription.compareMimeTypes(MIME_TYPE_GZIP, mimeTypeFilter)
+                && !ClipDescription.compareMimeTypes(MIME_TYPE_TEXT, mimeTypeFilter)) {
+            FilterService filterService = ServiceLocator.getInstance(getContext()).getFilterService();
+            ParcelFileDescriptor compressedFile = openCompressedFile(filterService, getCallingProfile());
+            return new AssetFileDescriptor(compressedFile, 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+        }
+        return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+    }
+
+    @Override
+    public String[] getStreamTypes(@NonNull Uri uri, @NonNull String mimeTypeFilter) {
+        List<String> types = new ArrayList<>();
+        for (String type : new String[]{MIME_TYPE_TEXT, MIME_TYPE_GZIP}) {
+            if (ClipDescription.compareMimeTypes(type, mimeTypeFilter)) {
+                types.add(type);
+            }
+        }
+        return types.isEmpty() ? null : types.toArray(new String[0]);
     }
 
     @Override
     public String getType(@NonNull Uri uri) {
-        return "text/plain";
+        return URI_MATCHER.match(uri) == MATCH_GZIP ? MIME_TYPE_GZIP : MIME_TYPE_TEXT;
     }
 
     @Override
     public boolean onCreate() {
-        filtersPath = getContext().getFilesDir().getAbsolutePath() + FILTERS_FILE_PATH;
         return true;
     }
 
+    /**
+     * Returns metadata of the filters file so that browsers can check if it has changed without reading it.
+     * <p>
+     * content://{@value #AUTHORITY} or content://{@value #AUTHORITY}/{@value #PATH_SNAPSHOT} -
+     * a single row with the published filters file snapshot of the calling browser (no rows if it is not compiled yet).
+     * <p>
+     * content://{@value #AUTHORITY}/{@value #PATH_FILTERS} - a row per enabled filter.
+     */
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
-        throw new UnsupportedOperationException("Not implemented");
+        FilterService filterService = ServiceLocator.getInstance(getContext()).getFilterService();
+        switch (URI_MATCHER.match(uri)) {
+            case MATCH_SNAPSHOT:
+                return querySnapshot(filterService, getCallingProfile());
+            case MATCH_FILTERS:
+                return queryFilters(filterService);
+            default:
+                throw new IllegalArgumentException("Unknown uri " + uri);
+        }
     }
 
     @Override
@@ -73,4 +209,172 @@ public class FiltersContentProvider extends ContentProvider {
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
         throw new UnsupportedOperationException("Not implemented");
     }
+
+    /**
+     * Gets the compile profile of the browser calling the provider
+     *
+     * @return Compile profile
+     */
+    private CompileProfile getCallingProfile() {
+        return CompileProfile.forPackage(getCallingPackage());
+    }
+
+    /**
+     * Opens the compressed filters file. It is published along with the plain text one.
+     *
+     * @param filterService Filter service
+     * @param profile       Compile profile of the filters file
+     * @return File descriptor
+     * @throws FileNotFoundException if filters are not compiled yet
+     */
+    private static ParcelFileDescriptor openCompressedFile(FilterService filterService, CompileProfile profile) throws FileNotFoundException {
+        File compressedFile = FiltersCompiler.getCompressedOutput(filterService.getFiltersFile(profile));
+        return ParcelFileDescriptor.open(compressedFile, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    /**
+     * Opens the asset with the prebuilt filters.
+     * Filters are prebuilt with the default profile, other profiles exclude some of its rules,
+     * so their consumers have to wait for the compilation.
+     *
+     * @param filterService Filter service
+     * @param profile       Compile profile of the requested filters
+     * @param name          Asset name
+     * @return Input stream or null if the prebuilt filters can't be served
+     */
+    private InputStream openPrebuiltAsset(FilterService filterService, CompileProfile profile, String name) {
+        if (profile != CompileProfile.DEFAULT || filterService.isFiltersCompiled()) {
+            return null;
+        }
+
+        try {
+            return getContext().getAssets().open(name);
+        } catch (IOException ex) {
+            LOG.warn("Cannot open prebuilt asset {}", name);
+            return null;
+        }
+    }
+
+    /**
+     * Compiles filters of the profile in the background, while the prebuilt filters are served.
+     * Browsers are notified when the compiled filters are published.
+     *
+     * @param filterService Filter service
+     * @param profile       Compile profile of the requested filters
+     */
+    private void scheduleCompilation(FilterService filterService, CompileProfile profile) {
+        if (!compileScheduled.add(profile)) {
+            return;
+        }
+
+        ExecutorsPool.getCachedExecutorService().submit(() -> {
+            try {
+                filterService.applyNewSettings(profile);
+            } finally {
+                compileScheduled.remove(profile);
+            }
+        });
+    }
+
+    /**
+     * Writes the prebuilt filters to the pipe
+     *
+     * @param prebuiltFilters Prebuilt filters
+     * @param pipe            Write side of the pipe
+     */
+    private static void writePrebuiltFilters(InputStream prebuiltFilters, ParcelFileDescriptor pipe) {
+        FileOutputStream outputStream = new FileOutputStream(pipe.getFileDescriptor());
+        try {
+            IOUtils.copy(prebuiltFilters, outputStream);
+            pipe.close();
+        } catch (Exception ex) {
+            LOG.error("Error writing prebuilt filters to the pipe", ex);
+            IoUtils.closeQuietly(pipe);
+        } finally {
+            IOUtils.closeQuietly(prebuiltFilters);
+        }
+    }
+
+    /**
+     * Compiles filters and writes them to the pipe.
+     * The pipe is written only when the filters file is published, so a browser
+     * which does not read it blocks this task only and never holds up the compilation.
+     *
+     * @param filterService Filter service
+     * @param profile       Compile profile of the filters written to the pipe
+     * @param pipe          Write side of the pipe
+     */
+    private static void writeFilters(FilterService filterService, CompileProfile profile, ParcelFileDescriptor pipe) {
+        FileInputStream inputStream = null;
+        try {
+            if (!filterService.applyNewSettings(profile)) {
+                pipe.closeWithError("Cannot compile filters");
+                return;
+            }
+
+            // Filters file is replaced atomically, so the stream reads a complete snapshot
+            inputStream = new FileInputStream(filterService.getFiltersFile(profile));
+            IOUtils.copy(inputStream, new FileOutputStream(pipe.getFileDescriptor()));
+            pipe.close();
+        } catch (Exception ex) {
+            LOG.error("Error writing filters to the pipe", ex);
+            IoUtils.closeQuietly(pipe);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Returns the snapshot of the published filters file.
+     * If nothing has been compiled yet, the snapshot of the prebuilt filters is returned with zero version
+     * to the default profile consumers.
+     */
+    private Cursor querySnapshot(FilterService filterService, CompileProfile profile) {
+        MatrixCursor cursor = new MatrixCursor(SNAPSHOT_COLUMNS, 1);
+        CompileResult snapshot = filterService.getFiltersSnapshot(profile);
+        if (snapshot != null) {
+            cursor.addRow(new Object[]{
+                    snapshot.getVersion(),
+                    snapshot.getChecksum(),
+                    snapshot.getRuleCount(),
+                    snapshot.getTimestamp()
+            });
+            return cursor;
+        }
+
+        InputStream inputStream = openPrebuiltAsset(filterService, profile, PREBUILT_SNAPSHOT_ASSET);
+        if (inputStream == null) {
+            return cursor;
+        }
+
+        try {
+            Properties prebuiltSnapshot = new Properties();
+            prebuiltSnapshot.load(inputStream);
+            cursor.addRow(new Object[]{
+                    0L,
+                    prebuiltSnapshot.getProperty("checksum"),
+                    Integer.parseInt(prebuiltSnapshot.getProperty("rules")),
+                    Long.parseLong(prebuiltSnapshot.getProperty("timestamp"))
+            });
+        } catch (IOException | NumberFormatException ex) {
+            LOG.warn("Cannot read prebuilt filters snapshot", ex);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+        return cursor;
+    }
+
+    private static Cursor queryFilters(FilterService filterService) {
+        List<FilterList> filters = filterService.getEnabledFilters();
+        MatrixCursor cursor = new MatrixCursor(FILTERS_COLUMNS, filters.size());
+        for (FilterList filter : filters) {
+            cursor.addRow(new Object[]{
+                    filter.getFilterId(),
+                    filter.getName(),
+                    filter.getVersion().toString(),
+                    filter.getTimeUpdated() == null ? null : filter.getTimeUpdated().getTime()
+            });
+        }
+        return cursor;
+    }
 }
@@ -18,6 +18,8 @@ package com.adguard.android.contentblocker;
 
 import com.adguard.android.contentblocker.api.HttpServiceClient;
 import com.adguard.android.contentblocker.commons.AppLink;
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
+import com.adguard.android.contentblocker.commons.web.HttpValidators;
 import com.adguard.android.contentblocker.commons.web.UrlUtils;
 import com.adguard.android.contentblocker.model.FilterList;
 
@@ -30,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.URL;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -51,41 +54,67 @@ public class ServiceApiClient extends HttpServiceClient {
     }
 
     /**
-     * Downloads filter rules
+     * Downloads filter rules if they have been modified since the last download
      *
-     * @param filterId Filter id
-     * @return List of rules
+     * @param filterId   Filter id
+     * @param validators Validators of the previous download. Updated from the response.
+     * @param consumer   Consumer of the downloaded rules
+     * @return false if the rules have not been modified
      */
-    public static List<String> downloadFilterRules(int filterId) throws IOException {
+    public static boolean downloadFilterRules(int filterId, HttpValidators validators, LineConsumer consumer) throws IOException {
         String downloadUrl = AppLink.FilterApi.getFilterUrl();
         downloadUrl = downloadUrl.replace("{0}", UrlUtils.urlEncode(Integer.toString(filterId)));
 
         LOG.info("Sending request to {}", downloadUrl);
-        String response = downloadString(downloadUrl);
-
-        LOG.debug("Response length is {}", response.length());
-        String[] rules = StringUtils.split(response, "\r\n");
-        List<String> filterRules = new ArrayList<>();
-        for (String line : rules) {
-            String rule = StringUtils.trim(line);
-            if (!StringUtils.isEmpty(rule)) {
-                filterRules.add(rule);
-            }
+        if (!downloadLines(downloadUrl, validators, consumer)) {
+            LOG.info("Filter {} has not been modified", filterId);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Downloads the patch that updates the locally stored filter to the latest version
+     *
+     * @param filterId Filter id
+     * @param diffPath Value of the "! Diff-Path:" header of the local filter (relative to the filter url)
+     * @return Patch text or null if there is no patch
+     */
+    public static String downloadFilterPatch(int filterId, String diffPath) throws IOException {
+        String filterUrl = AppLink.FilterApi.getFilterUrl();
+        filterUrl = filterUrl.replace("{0}", UrlUtils.urlEncode(Integer.toString(filterId)));
+        URL downloadUrl = new URL(new URL(filterUrl), diffPath);
+
+        LOG.info("Sending request to {}", downloadUrl);
+        String response = UrlUtils.downloadString(downloadUrl.toString(), READ_TIMEOUT, CONNECTION_TIMEOUT);
+        if (StringUtils.isBlank(response)) {
+            LOG.info("There is no patch for filter {}", filterId);
+            return null;
         }
 
-        return filterRules;
+        return response;
     }
 
     /**
      * Downloads filter versions.
+     * <p>
+     * If the versions have not been modified since the last download,
+     * parsing is skipped and the current versions of the filters are returned.
      *
-     * @param filters list
+     * @param filters    list
+     * @param validators Validators of the previous download. Updated from the response.
      * @return filters list with downloaded versions
      */
-    public static List<FilterList> downloadFilterVersions(List<FilterList> filters) throws IOException {
+    public static List<FilterList> downloadFilterVersions(List<FilterList> filters, HttpValidators validators) throws IOException {
         String downloadUrl = AppLink.FilterApi.getCheckFilterVersionsUrl();
         LOG.info("Sending request to {}", downloadUrl);
-        String response = downloadString(downloadUrl);
+        String response = downloadString(downloadUrl, validators);
+        if (validators.isNotModified()) {
+            LOG.info("Filter versions have not been modified");
+            return copyVersions(filters);
+        }
+
         if (StringUtils.isBlank(response)) {
             return null;
         }
@@ -129,6 +158,20 @@ public class ServiceApiClient extends HttpServiceClient {
 
     }
 
+    private static List<FilterList> copyVersions(List<FilterList> filters) {
+        List<FilterList> result = new ArrayList<>(filters.size());
+        for (FilterList filter : filters) {
+            FilterList list = new FilterList();
+            list.setName(filter.getName());
+            list.setDescription(filter.getDescription());
+            list.setFilterId(filter.getFilterId());
+            list.setVersion(filter.getVersion().getLongVersionString());
+            list.setTimeUpdated(filter.getTimeUpdated());
+            result.add(list);
+        }
+        return result;
+    }
+
     private static Map readValue(String src, Class<Map> valueType) {
         try {
             return OBJECT_MAPPER.readValue(src, valueType);
@@ -16,6 +16,8 @@
  */
 package com.adguard.android.contentblocker.api;
 
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
+import com.adguard.android.contentblocker.commons.web.HttpValidators;
 import com.adguard.android.contentblocker.commons.web.UrlUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -32,8 +34,8 @@ import java.net.URL;
 public class HttpServiceClient {
 
     private static final Logger LOG = LoggerFactory.getLogger(HttpServiceClient.class);
-    private static final int CONNECTION_TIMEOUT = 10000; // 10 seconds
-    private static final int READ_TIMEOUT = 30000; // 30 seconds
+    protected static final int CONNECTION_TIMEOUT = 10000; // 10 seconds
+    protected static final int READ_TIMEOUT = 30000; // 30 seconds
 
     /**
      * Downloads string from the specified url.
@@ -54,6 +56,63 @@ public class HttpServiceClient {
         return response;
     }
 
+    /**
+     * Downloads string from the specified url if it has been modified since the last download.
+     *
+     * @param downloadUrl Download url
+     * @param validators  Validators of the previous response. Updated from the new response.
+     * @return String or null if the content has not been modified
+     */
+    protected static String downloadString(String downloadUrl, HttpValidators validators) throws IOException {
+        LOG.debug("Sending conditional HTTP GET request to {}", downloadUrl);
+
+        final String response = UrlUtils.downloadString(new URL(downloadUrl), null, READ_TIMEOUT, CONNECTION_TIMEOUT, "utf-8", -1, validators);
+        if (validators.isNotModified()) {
+            LOG.debug("Response for {} has not been modified", downloadUrl);
+            return null;
+        }
+
+        if (StringUtils.isEmpty(response)) {
+            LOG.error("Response for {} is empty", downloadUrl);
+            throw new IOException("Response is empty.");
+        }
+
+        LOG.debug("Got response:{}", response);
+        return response;
+    }
+
+    /**
+     * Downloads content from the specified url line by line if it has been modified since the last download.
+     *
+     * @param downloadUrl Download url
+     * @param validators  Validators of the previous response. Updated from the new response.
+     * @param consumer    Consumer of the downloaded lines
+     * @return false if the content has not been modified
+     */
+    protected static boolean downloadLines(String downloadUrl, HttpValidators validators, final LineConsumer consumer) throws IOException {
+        LOG.debug("Sending conditional HTTP GET request to {}", downloadUrl);
+
+        final int[] linesCount = new int[1];
+        boolean modified = UrlUtils.downloadLines(new URL(downloadUrl), null, READ_TIMEOUT, CONNECTION_TIMEOUT, "utf-8", -1, validators, line -> {
+            if (StringUtils.isNotBlank(line)) {
+                linesCount[0]++;
+            }
+            consumer.accept(line);
+        });
+        if (!modified) {
+            LOG.debug("Response for {} has not been modified", downloadUrl);
+            return false;
+        }
+
+        if (linesCount[0] == 0) {
+            LOG.error("Response for {} is empty", downloadUrl);
+            throw new IOException("Response is empty.");
+        }
+
+        LOG.debug("Got {} lines", linesCount[0]);
+        return true;
+    }
+
     /**
      * Posts request with specified parameters to url.
      *
@@ -114,6 +114,20 @@ public class BrowserUtils {
         return result;
     }
 
+    /**
+     * @return Package names of the Yandex browser versions
+     */
+    public static List<String> getYandexBrowserPackages() {
+        return Collections.unmodifiableList(yandexBrowserPackageList);
+    }
+
+    /**
+     * @return Package names of the Samsung Internet versions
+     */
+    public static List<String> getSamsungBrowserPackages() {
+        return Collections.unmodifiableList(samsungBrowserPackageList);
+    }
+
     public static Set<String> getKnownBrowsers() {
         Set<String> result = new HashSet<>();
         result.addAll(yandexBrowserPackageList);
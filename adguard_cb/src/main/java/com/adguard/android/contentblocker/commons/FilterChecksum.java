@@ -0,0 +1,99 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Verifies filter content against its "! Checksum:" header.
+ * <p>
+ * Checksum is a base64-encoded MD5 hash (without padding) of the filter text
+ * with the checksum line removed, line breaks normalized to '\n' and empty lines skipped.
+ * Lines are passed one by one, so the whole filter is never kept in memory.
+ */
+public class FilterChecksum {
+
+    private static final Pattern CHECKSUM_PATTERN = Pattern.compile("^\\s*!\\s*checksum[\\s\\-:]+([\\w+/=]+).*$", Pattern.CASE_INSENSITIVE);
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+
+    private final MessageDigest digest;
+    private String expectedChecksum;
+    private boolean empty = true;
+
+    /**
+     * Creates an instance of the checksum calculator
+     */
+    public FilterChecksum() {
+        digest = HashUtils.newMd5();
+    }
+
+    /**
+     * Adds the next line of the filter
+     *
+     * @param line Line without line break
+     */
+    public void update(String line) {
+        if (expectedChecksum == null) {
+            Matcher matcher = CHECKSUM_PATTERN.matcher(line);
+            if (matcher.matches()) {
+                expectedChecksum = matcher.group(1);
+                return;
+            }
+        }
+
+        if (line.isEmpty()) {
+            return;
+        }
+
+        if (!empty) {
+            digest.update((byte) '\n');
+        }
+        digest.update(line.getBytes(UTF_8));
+        empty = false;
+    }
+
+    /**
+     * @return Value of the "! Checksum:" header or null if there was no such header
+     */
+    public String getExpectedChecksum() {
+        return expectedChecksum;
+    }
+
+    /**
+     * Checks that the lines passed match the checksum header.
+     * Filter may or may not end with a line break, so both variants are accepted.
+     *
+     * @return true if the checksum header is present and matches the content
+     */
+    public boolean verify() {
+        if (expectedChecksum == null) {
+            return false;
+        }
+
+        try {
+            MessageDigest withLineBreak = (MessageDigest) digest.clone();
+            withLineBreak.update((byte) '\n');
+            return expectedChecksum.equals(HashUtils.toBase64(digest.digest())) ||
+                    expectedChecksum.equals(HashUtils.toBase64(withLineBreak.digest()));
+        } catch (CloneNotSupportedException ex) {
+            return expectedChecksum.equals(HashUtils.toBase64(digest.digest()));
+        }
+    }
+}
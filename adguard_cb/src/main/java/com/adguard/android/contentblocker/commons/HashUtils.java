@@ -0,0 +1,143 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helper methods for hashing strings
+ */
+public class HashUtils {
+
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Calculates 64-bit fingerprint of the text.
+     * It is used instead of the text itself when we need to find duplicate rules.
+     *
+     * @param text Text
+     * @return Fingerprint
+     */
+    public static long fingerprint(CharSequence text) {
+        return fingerprint(text, 0, text.length());
+    }
+
+    /**
+     * Calculates 64-bit fingerprint of the part of the text without copying it
+     *
+     * @param text  Text
+     * @param start Start index, inclusive
+     * @param end   End index, exclusive
+     * @return Fingerprint, the same as the fingerprint of the {@code text.subSequence(start, end)}
+     */
+    public static long fingerprint(CharSequence text, int start, int end) {
+        // FNV-1a over UTF-16 chars followed by the MurmurHash3 finalizer
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Calculates MD5 hash of the specified text
+     *
+     * @param text Text to hash (null is treated as an empty string)
+     * @return Hex-encoded MD5 hash
+     */
+    public static String md5Hex(String text) {
+        return toHex(md5(text == null ? new byte[0] : text.getBytes(UTF_8)));
+    }
+
+    /**
+     * Calculates MD5 hash of the specified bytes
+     *
+     * @param bytes Bytes to hash
+     * @return MD5 digest
+     */
+    public static byte[] md5(byte[] bytes) {
+        return newMd5().digest(bytes);
+    }
+
+    /**
+     * @return New MD5 digest for the incremental hashing
+     */
+    public static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            // MD5 is always supported on Android
+            throw new IllegalStateException("MD5 is not supported", ex);
+        }
+    }
+
+    /**
+     * Encodes bytes as a hex string
+     *
+     * @param bytes Bytes to encode
+     * @return Hex string
+     */
+    public static String toHex(byte[] bytes) {
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            result[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(result);
+    }
+
+    /**
+     * Encodes bytes as a base64 string without padding
+     *
+     * @param bytes Bytes to encode
+     * @return Base64 string
+     */
+    public static String toBase64(byte[] bytes) {
+        StringBuilder result = new StringBuilder((bytes.length + 2) / 3 * 4);
+        for (int i = 0; i < bytes.length; i += 3) {
+            int remaining = Math.min(3, bytes.length - i);
+            int chunk = (bytes[i] & 0xff) << 16;
+            if (remaining > 1) {
+                chunk |= (bytes[i + 1] & 0xff) << 8;
+            }
+            if (remaining > 2) {
+                chunk |= bytes[i + 2] & 0xff;
+            }
+            for (int j = 0; j <= remaining; j++) {
+                result.append(BASE64_DIGITS[(chunk >> (18 - j * 6)) & 0x3f]);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -39,6 +39,18 @@ public class PackageUtils {
         return "1.0";
     }
 
+    /**
+     * Gets the time when our package was last updated.
+     * Bundled resources may change only when the package is updated.
+     *
+     * @param context App context
+     * @return Last update time or 0 if it is unknown
+     */
+    public static long getLastUpdateTime(Context context) {
+        PackageInfo packageInfo = getPackageInfo(context);
+        return packageInfo != null ? packageInfo.lastUpdateTime : 0;
+    }
+
     /**
      * Checks Google Play Store is installed or not
      *
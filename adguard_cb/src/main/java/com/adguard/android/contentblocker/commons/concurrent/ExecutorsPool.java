@@ -18,7 +18,10 @@ package com.adguard.android.contentblocker.commons.concurrent;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Pool for commonly used executor services.
@@ -28,6 +31,10 @@ public class ExecutorsPool {
 
     private static ExecutorService cachedExecutorService;
     private static ScheduledExecutorService singleThreadScheduledExecutorService;
+    private static ExecutorService downloadExecutorService;
+
+    private static final int MAX_PARALLEL_DOWNLOADS = 4;
+    private static final long DOWNLOAD_THREAD_KEEP_ALIVE = 60; // seconds
 
     /**
      * @return Standard cached executor service.
@@ -52,4 +59,19 @@ public class ExecutorsPool {
         }
         return singleThreadScheduledExecutorService;
     }
+
+    /**
+     * @return Executor service for network downloads.
+     *         At most {@link #MAX_PARALLEL_DOWNLOADS} tasks are executed at the same time,
+     *         the rest are queued. Idle threads are stopped after 60 seconds.
+     */
+    public static synchronized ExecutorService getDownloadExecutorService() {
+        if (downloadExecutorService == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_DOWNLOADS, MAX_PARALLEL_DOWNLOADS,
+                    DOWNLOAD_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            downloadExecutorService = executor;
+        }
+        return downloadExecutorService;
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * <pre>
+ * Helper for replacing a file atomically.
+ *
+ * New content is written to a temporary file which is synced to the disk
+ * and then renamed over the target file. Readers always see either the previous
+ * or the new complete version of the file, and those that have already opened the
+ * previous version keep reading it until they close it.
+ *
+ * Unlike {@link android.util.AtomicFile} the target file is never removed or
+ * partially written, so it can be read while it is being replaced.
+ *
+ * Usage:
+ * {@code
+ * FileOutputStream outputStream = atomicFile.startWrite();
+ * try {
+ *     // write content
+ *     atomicFile.finishWrite(outputStream);
+ * } catch (IOException ex) {
+ *     atomicFile.failWrite(outputStream);
+ * }
+ * }</pre>
+ */
+public class AtomicFile {
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final File file;
+    private final File tempFile;
+
+    /**
+     * Creates an instance of the atomic file
+     *
+     * @param file Target file
+     */
+    public AtomicFile(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * @return Target file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Starts writing new content of the file
+     *
+     * @return Stream to write the new content to
+     * @throws IOException if the temporary file cannot be created
+     */
+    public FileOutputStream startWrite() throws IOException {
+        return new FileOutputStream(tempFile);
+    }
+
+    /**
+     * Syncs the written content to the disk and replaces the target file with it
+     *
+     * @param outputStream Stream returned by {@link #startWrite()}
+     * @throws IOException if the content cannot be synced or the file cannot be replaced.
+     *                     The target file is left unchanged in this case.
+     */
+    public void finishWrite(FileOutputStream outputStream) throws IOException {
+        try {
+            outputStream.flush();
+            outputStream.getFD().sync();
+            outputStream.close();
+
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+        } catch (IOException ex) {
+            failWrite(outputStream);
+            throw ex;
+        }
+    }
+
+    /**
+     * Discards the written content, the target file is left unchanged
+     *
+     * @param outputStream Stream returned by {@link #startWrite()}
+     */
+    public void failWrite(FileOutputStream outputStream) {
+        IoUtils.closeQuietly(outputStream);
+        if (tempFile.exists()) {
+            tempFile.delete();
+        }
+    }
+}
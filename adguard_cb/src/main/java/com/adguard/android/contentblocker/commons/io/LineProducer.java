@@ -0,0 +1,39 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.io;
+
+import java.io.IOException;
+
+/**
+ * <pre>
+ * Represents an operation that produces lines of text and passes them to a {@link LineConsumer}.
+ *
+ * This is a functional interface
+ * which functional method is {@link #produce(LineConsumer)}.</pre>
+ */
+@FunctionalInterface
+public interface LineProducer {
+
+    /**
+     * Passes the produced lines to the consumer
+     *
+     * @param consumer Consumer of the lines
+     * @return false if there is nothing to produce and the previous result should be kept
+     * @throws IOException if the lines cannot be produced
+     */
+    boolean produce(LineConsumer consumer) throws IOException;
+}
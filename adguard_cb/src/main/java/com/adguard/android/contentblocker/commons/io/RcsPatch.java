@@ -0,0 +1,166 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.io;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Patch in the RCS diff format ("diff -n").
+ * <p>
+ * Patch consists of the commands "a[line] [count]" (followed by the count of lines to add after the line)
+ * and "d[line] [count]" (delete the count of lines starting from the line).
+ * Line numbers refer to the original file and commands go in ascending order,
+ * so the patch can be applied in a single pass while the original file is being read.
+ */
+public class RcsPatch {
+
+    private static final Pattern COMMAND_PATTERN = Pattern.compile("^([ad])(\\d+) (\\d+)$");
+    private static final String DIFF_HEADER_PREFIX = "diff ";
+
+    private final List<Command> commands;
+
+    private RcsPatch(List<Command> commands) {
+        this.commands = commands;
+    }
+
+    /**
+     * Parses patch text
+     *
+     * @param text Patch text
+     * @return Parsed patch
+     * @throws IOException if the patch is malformed
+     */
+    public static RcsPatch parse(String text) throws IOException {
+        String[] lines = StringUtils.splitPreserveAllTokens(StringUtils.remove(text, '\r'), '\n');
+        List<Command> commands = new ArrayList<>();
+
+        int position = 0;
+        int i = 0;
+        if (lines.length > 0 && lines[0].startsWith(DIFF_HEADER_PREFIX)) {
+            i++;
+        }
+
+        while (i < lines.length) {
+            String line = lines[i++];
+            if (line.isEmpty() && i == lines.length) {
+                // Trailing line break
+                break;
+            }
+
+            Matcher matcher = COMMAND_PATTERN.matcher(line);
+            if (!matcher.matches()) {
+                throw new IOException("Invalid patch command: " + line);
+            }
+
+            boolean add = "a".equals(matcher.group(1));
+            int lineNumber = Integer.parseInt(matcher.group(2));
+            int count = Integer.parseInt(matcher.group(3));
+
+            // Commands must not overlap
+            int start = add ? lineNumber : lineNumber - 1;
+            if (start < position || count < 0) {
+                throw new IOException("Patch commands are not in ascending order: " + line);
+            }
+
+            Command command = new Command(add, lineNumber, count);
+            if (add) {
+                if (i + count > lines.length) {
+                    throw new IOException("Unexpected end of patch");
+                }
+                for (int j = 0; j < count; j++) {
+                    command.lines.add(lines[i++]);
+                }
+                position = lineNumber;
+            } else {
+                position = lineNumber - 1 + count;
+            }
+            commands.add(command);
+        }
+
+        return new RcsPatch(commands);
+    }
+
+    /**
+     * @return true if the patch has no commands
+     */
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    /**
+     * Applies the patch to the source
+     *
+     * @param source Original lines
+     * @param target Consumer of the resulting lines
+     * @throws IOException if the patch does not match the source or the source cannot be read
+     */
+    public void apply(BufferedReader source, LineConsumer target) throws IOException {
+        int current = 0;
+        for (Command command : commands) {
+            if (command.add) {
+                copy(source, target, command.lineNumber - current);
+                current = command.lineNumber;
+                for (String line : command.lines) {
+                    target.accept(line);
+                }
+            } else {
+                copy(source, target, command.lineNumber - 1 - current);
+                for (int i = 0; i < command.count; i++) {
+                    if (source.readLine() == null) {
+                        throw new IOException("Patch does not match the source");
+                    }
+                }
+                current = command.lineNumber - 1 + command.count;
+            }
+        }
+
+        String line;
+        while ((line = source.readLine()) != null) {
+            target.accept(line);
+        }
+    }
+
+    private static void copy(BufferedReader source, LineConsumer target, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            String line = source.readLine();
+            if (line == null) {
+                throw new IOException("Patch does not match the source");
+            }
+            target.accept(line);
+        }
+    }
+
+    private static class Command {
+        private final boolean add;
+        private final int lineNumber;
+        private final int count;
+        private final List<String> lines = new ArrayList<>();
+
+        Command(boolean add, int lineNumber, int count) {
+            this.add = add;
+            this.lineNumber = lineNumber;
+            this.count = count;
+        }
+    }
+}
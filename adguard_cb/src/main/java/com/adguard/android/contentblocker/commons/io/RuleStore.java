@@ -0,0 +1,49 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.io;
+
+import com.adguard.android.contentblocker.model.RuleType;
+
+/**
+ * <pre>
+ * Compact binary format of the compiled rules.
+ *
+ * Rule store starts with a header: magic number (int), format version (int),
+ * a stamp of the source the rules were compiled from (long) and the sections table.
+ * Rules are grouped into sections by their {@link RuleType}, sections table contains
+ * the number of sections (int) followed by offset (int), length in bytes (int)
+ * and number of rules (int) of every section in the order of the type codes.
+ *
+ * A section is a sequence of records: rule type code (byte),
+ * rule fingerprint (long), length of the rule in bytes (int) and UTF-8 encoded rule text.
+ *
+ * Rules are stored in the same encoding they are written to the filters file,
+ * so rule stores can be memory-mapped and copied without decoding.
+ * Selecting rules of some types only means reading the corresponding sections.</pre>
+ *
+ * @see RuleStoreReader
+ * @see RuleStoreWriter
+ */
+public class RuleStore {
+
+    static final int MAGIC = 0x41434252; // "ACBR"
+    // Increment it when the format or the rule type codes change, so that the old stores are rebuilt
+    static final int VERSION = 2;
+    static final int SECTIONS_COUNT = RuleType.values().length;
+    static final int HEADER_SIZE = 4 + 4 + 8 + 4 + SECTIONS_COUNT * (4 + 4 + 4);
+    static final int RECORD_HEADER_SIZE = 1 + 8 + 4;
+}
@@ -0,0 +1,184 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.io;
+
+import com.adguard.android.contentblocker.model.RuleType;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * <pre>
+ * Reads rules from a memory-mapped {@link RuleStore} file.
+ *
+ * Usage:
+ * {@code
+ * reader.select(RuleType.NETWORK);
+ * while (reader.next()) {
+ *     reader.getRuleBytes();
+ * }
+ * }</pre>
+ */
+public class RuleStoreReader implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+
+    private final RandomAccessFile file;
+    private final ByteBuffer buffer;
+    private final long sourceStamp;
+    private final int[] sectionOffsets = new int[RuleStore.SECTIONS_COUNT];
+    private final int[] sectionLengths = new int[RuleStore.SECTIONS_COUNT];
+    private final int[] sectionCounts = new int[RuleStore.SECTIONS_COUNT];
+
+    private RuleType type;
+    private long fingerprint;
+    private int ruleOffset;
+    private int ruleLength;
+
+    /**
+     * Opens the rule store and reads its header.
+     * All the sections are selected.
+     *
+     * @param file Rule store file
+     * @throws IOException if the file cannot be read or it is not a rule store of the current version
+     */
+    public RuleStoreReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = this.file.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < RuleStore.HEADER_SIZE
+                    || buffer.getInt() != RuleStore.MAGIC
+                    || buffer.getInt() != RuleStore.VERSION) {
+                throw new IOException("Invalid rule store " + file);
+            }
+            sourceStamp = buffer.getLong();
+
+            if (buffer.getInt() != RuleStore.SECTIONS_COUNT) {
+                throw new IOException("Invalid rule store " + file);
+            }
+            for (int i = 0; i < RuleStore.SECTIONS_COUNT; i++) {
+                sectionOffsets[i] = buffer.getInt();
+                sectionLengths[i] = buffer.getInt();
+                sectionCounts[i] = buffer.getInt();
+                if (sectionOffsets[i] < RuleStore.HEADER_SIZE
+                        || sectionLengths[i] < 0
+                        || (long) sectionOffsets[i] + sectionLengths[i] > buffer.capacity()) {
+                    throw new IOException("Rule store " + file + " is truncated");
+                }
+            }
+        } catch (IOException ex) {
+            IoUtils.closeQuietly(this.file);
+            throw ex;
+        }
+    }
+
+    /**
+     * @return Stamp of the source the rules were compiled from
+     */
+    public long getSourceStamp() {
+        return sourceStamp;
+    }
+
+    /**
+     * @param type Rule type
+     * @return Number of rules of this type
+     */
+    public int getCount(RuleType type) {
+        return sectionCounts[type.getCode()];
+    }
+
+    /**
+     * Selects the section with the rules of the specified type.
+     * After that {@link #next()} iterates over the rules of this section only.
+     *
+     * @param type Rule type
+     */
+    public void select(RuleType type) {
+        int offset = sectionOffsets[type.getCode()];
+        buffer.limit(offset + sectionLengths[type.getCode()]);
+        buffer.position(offset);
+    }
+
+    /**
+     * Moves to the next rule of the selected section
+     *
+     * @return false if there are no more rules
+     * @throws IOException if the rule store is corrupted
+     */
+    public boolean next() throws IOException {
+        if (!buffer.hasRemaining()) {
+            return false;
+        }
+
+        if (buffer.remaining() < RuleStore.RECORD_HEADER_SIZE) {
+            throw new IOException("Rule store is truncated");
+        }
+        type = RuleType.fromCode(buffer.get());
+        fingerprint = buffer.getLong();
+        ruleLength = buffer.getInt();
+        if (type == null || ruleLength < 0 || buffer.remaining() < ruleLength) {
+            throw new IOException("Rule store is corrupted");
+        }
+        ruleOffset = buffer.position();
+        buffer.position(ruleOffset + ruleLength);
+        return true;
+    }
+
+    /**
+     * @return Type of the current rule
+     */
+    public RuleType getType() {
+        return type;
+    }
+
+    /**
+     * @return Fingerprint of the current rule
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return UTF-8 encoded text of the current rule. The buffer is backed by the mapped file.
+     */
+    public ByteBuffer getRuleBytes() {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(ruleOffset + ruleLength);
+        bytes.position(ruleOffset);
+        return bytes;
+    }
+
+    /**
+     * @return Text of the current rule
+     */
+    public String getRule() {
+        byte[] bytes = new byte[ruleLength];
+        getRuleBytes().get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
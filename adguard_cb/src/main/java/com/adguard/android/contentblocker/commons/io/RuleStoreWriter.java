@@ -0,0 +1,165 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.io;
+
+import com.adguard.android.contentblocker.commons.HashUtils;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes rules to a {@link RuleStore} file.
+ * <p>
+ * Rules are written to temporary section files first,
+ * the rule store itself is assembled when the writer is closed.
+ */
+public class RuleStoreWriter implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final File file;
+    private final long sourceStamp;
+    private final File[] sectionFiles = new File[RuleStore.SECTIONS_COUNT];
+    private final DataOutputStream[] sections = new DataOutputStream[RuleStore.SECTIONS_COUNT];
+    private final int[] counts = new int[RuleStore.SECTIONS_COUNT];
+    private boolean closed;
+
+    /**
+     * Creates an instance of the writer
+     *
+     * @param file        Rule store file
+     * @param sourceStamp Stamp of the source the rules are compiled from
+     */
+    public RuleStoreWriter(File file, long sourceStamp) {
+        this.file = file;
+        this.sourceStamp = sourceStamp;
+    }
+
+    /**
+     * Writes the rule, its type is detected with {@link RuleType#classify(String)}
+     *
+     * @param rule Rule text
+     * @throws IOException if the rule cannot be written
+     */
+    public void write(String rule) throws IOException {
+        write(RuleType.classify(rule), HashUtils.fingerprint(rule), rule);
+    }
+
+    /**
+     * Writes the rule
+     *
+     * @param type        Rule type
+     * @param fingerprint Rule fingerprint
+     * @param rule        Rule text
+     * @throws IOException if the rule cannot be written
+     */
+    public void write(RuleType type, long fingerprint, String rule) throws IOException {
+        byte[] bytes = rule.getBytes(UTF_8);
+        DataOutputStream outputStream = getSection(type);
+        outputStream.writeByte(type.getCode());
+        outputStream.writeLong(fingerprint);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+        counts[type.getCode()]++;
+    }
+
+    /**
+     * Assembles the rule store from the written sections
+     *
+     * @throws IOException if the rule store cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        FileOutputStream outputStream = null;
+        try {
+            for (DataOutputStream section : sections) {
+                if (section != null) {
+                    section.close();
+                }
+            }
+
+            outputStream = new FileOutputStream(file);
+            DataOutputStream header = new DataOutputStream(new BufferedOutputStream(outputStream, RuleStore.HEADER_SIZE));
+            header.writeInt(RuleStore.MAGIC);
+            header.writeInt(RuleStore.VERSION);
+            header.writeLong(sourceStamp);
+            header.writeInt(RuleStore.SECTIONS_COUNT);
+            long offset = RuleStore.HEADER_SIZE;
+            for (int i = 0; i < RuleStore.SECTIONS_COUNT; i++) {
+                long length = sectionFiles[i] == null ? 0 : sectionFiles[i].length();
+                header.writeInt((int) offset);
+                header.writeInt((int) length);
+                header.writeInt(counts[i]);
+                offset += length;
+            }
+            header.flush();
+
+            FileChannel target = outputStream.getChannel();
+            for (File sectionFile : sectionFiles) {
+                if (sectionFile != null) {
+                    appendSection(sectionFile, target);
+                }
+            }
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+            for (int i = 0; i < RuleStore.SECTIONS_COUNT; i++) {
+                IoUtils.closeQuietly(sections[i]);
+                FileUtils.deleteQuietly(sectionFiles[i]);
+            }
+        }
+    }
+
+    private DataOutputStream getSection(RuleType type) throws IOException {
+        int index = type.getCode();
+        if (sections[index] == null) {
+            sectionFiles[index] = new File(file.getPath() + "." + index);
+            sections[index] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sectionFiles[index]), BUFFER_SIZE));
+        }
+        return sections[index];
+    }
+
+    private static void appendSection(File sectionFile, FileChannel target) throws IOException {
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(sectionFile);
+            FileChannel source = inputStream.getChannel();
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, target);
+            }
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.web;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <pre>
+ * Set of domain names stored in a trie of reversed domain labels.
+ *
+ * Every domain can be enabled or disabled. A host matches the trie if the host itself
+ * or any of its parent domains is an enabled entry, so the lookup cost depends only on
+ * the number of labels of the host, not on the number of entries.</pre>
+ */
+public class DomainTrie {
+
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * Adds domain to the trie. The state of the domain which is already there is not changed.
+     *
+     * @param domain  Domain name
+     * @param enabled Whether the domain is enabled
+     * @return false if the domain is already there
+     */
+    public synchronized boolean add(String domain, boolean enabled) {
+        String[] labels = getLabels(domain);
+        if (labels.length == 0) {
+            return false;
+        }
+
+        Node node = root;
+        for (int i = labels.length - 1; i >= 0; i--) {
+            Node child = node.children.get(labels[i]);
+            if (child == null) {
+                child = new Node();
+                node.children.put(labels[i], child);
+            }
+            node = child;
+        }
+
+        if (node.entry) {
+            return false;
+        }
+        node.entry = true;
+        node.enabled = enabled;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes domain from the trie, its subdomains are kept
+     *
+     * @param domain Domain name
+     * @return false if there was no such domain
+     */
+    public synchronized boolean remove(String domain) {
+        String[] labels = getLabels(domain);
+        List<Node> path = new ArrayList<>(labels.length + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = labels.length - 1; i >= 0 && node != null; i--) {
+            node = node.children.get(labels[i]);
+            path.add(node);
+        }
+        if (node == null || !node.entry || labels.length == 0) {
+            return false;
+        }
+
+        node.entry = false;
+        size--;
+        // Dropping the nodes which do not lead to any entry anymore
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node current = path.get(i);
+            if (current.entry || !current.children.isEmpty()) {
+                break;
+            }
+            path.get(i - 1).children.remove(labels[labels.length - i]);
+        }
+        return true;
+    }
+
+    /**
+     * Enables or disables the domain
+     *
+     * @param domain  Domain name
+     * @param enabled Whether the domain is enabled
+     */
+    public synchronized void setEnabled(String domain, boolean enabled) {
+        Node node = getNode(domain);
+        if (node != null && node.entry) {
+            node.enabled = enabled;
+        }
+    }
+
+    /**
+     * Checks if the domain is in the trie, whatever its state is
+     *
+     * @param domain Domain name
+     * @return true if the domain is an entry of the trie
+     */
+    public synchronized boolean contains(String domain) {
+        Node node = getNode(domain);
+        return node != null && node.entry;
+    }
+
+    /**
+     * Checks if the host or any of its parent domains is an enabled entry
+     *
+     * @param host Host name
+     * @return true if the host matches the trie
+     */
+    public synchronized boolean matches(String host) {
+        return findEnabled(getLabels(host), 0);
+    }
+
+    /**
+     * Checks if any of the parent domains is an enabled entry, the domain itself is not checked
+     *
+     * @param domain Domain name
+     * @return true if the domain is covered by a parent domain
+     */
+    public synchronized boolean hasEnabledParent(String domain) {
+        return findEnabled(getLabels(domain), 1);
+    }
+
+    /**
+     * @return Number of domains in the trie
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no domains in the trie
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Looks for an enabled entry on the path of the domain
+     *
+     * @param labels     Domain labels
+     * @param skipLabels Number of the lowest labels to skip
+     * @return true if an enabled entry has been found
+     */
+    private boolean findEnabled(String[] labels, int skipLabels) {
+        Node node = root;
+        for (int i = labels.length - 1; i >= skipLabels; i--) {
+            node = node.children.get(labels[i]);
+            if (node == null) {
+                return false;
+            }
+            if (node.entry && node.enabled) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Node getNode(String domain) {
+        String[] labels = getLabels(domain);
+        if (labels.length == 0) {
+            return null;
+        }
+
+        Node node = root;
+        for (int i = labels.length - 1; i >= 0 && node != null; i--) {
+            node = node.children.get(labels[i]);
+        }
+        return node;
+    }
+
+    /**
+     * Normalizes the domain name the way it is stored in the trie.
+     * Domains should be normalized before they are stored anywhere else, so that they match the trie entries.
+     *
+     * @param domain Domain name
+     * @return Trimmed lower-cased domain name
+     */
+    public static String normalize(String domain) {
+        return StringUtils.lowerCase(StringUtils.trim(domain));
+    }
+
+    private static String[] getLabels(String domain) {
+        String[] labels = StringUtils.split(normalize(domain), '.');
+        return labels == null ? new String[0] : labels;
+    }
+
+    /**
+     * Trie node of a domain label
+     */
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean entry;
+        private boolean enabled;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.web;
+
+/**
+ * HTTP cache validators of a previously downloaded response.
+ * They are sent back with the next request so that the server
+ * could answer with "304 Not Modified" instead of the full body.
+ */
+public class HttpValidators {
+
+    private String etag;
+    private String lastModified;
+    private boolean notModified;
+
+    /**
+     * Creates an empty instance (unconditional request)
+     */
+    public HttpValidators() {
+    }
+
+    /**
+     * Creates an instance with the specified validators
+     *
+     * @param etag         Value of the "ETag" response header
+     * @param lastModified Value of the "Last-Modified" response header
+     */
+    public HttpValidators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return Value of the "ETag" response header or null
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @param etag Value of the "ETag" response header
+     */
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    /**
+     * @return Value of the "Last-Modified" response header or null
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @param lastModified Value of the "Last-Modified" response header
+     */
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return true if the last request was answered with "304 Not Modified"
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * @param notModified true if the last request was answered with "304 Not Modified"
+     */
+    public void setNotModified(boolean notModified) {
+        this.notModified = notModified;
+    }
+
+    /**
+     * @return true if there is at least one validator to send
+     */
+    public boolean isEmpty() {
+        return etag == null && lastModified == null;
+    }
+}
@@ -17,6 +17,7 @@
 package com.adguard.android.contentblocker.commons.web;
 
 import com.adguard.android.contentblocker.commons.io.IoUtils;
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CountingInputStream;
@@ -25,6 +26,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -112,16 +114,36 @@ public class UrlUtils {
      * @return Downloaded string
      */
     public static String downloadString(URL url, Proxy proxy, int readTimeout, int socketTimeout, String encoding, long limit) {
+        return downloadString(url, proxy, readTimeout, socketTimeout, encoding, limit, null);
+    }
+
+    /**
+     * Downloads content from the specified url if it has been modified since the last download.
+     * Validators are sent as the conditional request headers and updated from the response.
+     * Returns null if there's an error or if the content has not been modified
+     * (check {@link HttpValidators#isNotModified()} to tell one from the other).
+     *
+     * @param url           url
+     * @param proxy         proxy to use
+     * @param readTimeout   read timeout
+     * @param socketTimeout connection timeout
+     * @param limit         response size limit in bytes
+     * @param validators    validators of the previous response or null
+     * @return Downloaded string
+     */
+    public static String downloadString(URL url, Proxy proxy, int readTimeout, int socketTimeout, String encoding, long limit, HttpValidators validators) {
         HttpURLConnection connection = null;
         InputStream inputStream = null;
 
         try {
-            connection = (HttpURLConnection) (proxy == null ? url.openConnection() : url.openConnection(proxy));
-            connection.setRequestProperty("User-Agent", USER_AGENT);
-            connection.setReadTimeout(readTimeout);
-            connection.setConnectTimeout(socketTimeout);
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            connection.connect();
+            connection = openConnection(url, proxy, readTimeout, socketTimeout, validators);
+            if (validators != null) {
+                validators.setNotModified(connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED);
+                if (validators.isNotModified()) {
+                    return null;
+                }
+            }
+
             if (connection.getResponseCode() >= 400) {
                 throw new IOException("Response status is " + connection.getResponseCode());
             }
@@ -130,13 +152,15 @@ public class UrlUtils {
                 String location = connection.getHeaderField("Location");
                 // HttpURLConnection does not follow redirects from HTTP to HTTPS
                 // So we handle it manually
-                return downloadString(new URL(location), proxy, readTimeout, socketTimeout, encoding, limit);
+                return downloadString(new URL(location), proxy, readTimeout, socketTimeout, encoding, limit, validators);
             }
 
             if (connection.getResponseCode() == 204) {
                 return StringUtils.EMPTY;
             }
 
+            readValidators(connection, validators);
+
             CountingInputStream countingInputStream = new CountingInputStream(connection.getInputStream());
             inputStream = countingInputStream;
 
@@ -172,6 +196,129 @@ public class UrlUtils {
         }
     }
 
+    /**
+     * Downloads content from the specified url line by line without keeping it in memory.
+     * Lines are passed as is (including empty ones), so that a local copy keeps the line numbers of the original.
+     * Validators are sent as the conditional request headers and updated from the response.
+     *
+     * @param url           url
+     * @param proxy         proxy to use
+     * @param readTimeout   read timeout
+     * @param socketTimeout connection timeout
+     * @param encoding      response encoding
+     * @param limit         response size limit in bytes
+     * @param validators    validators of the previous response or null
+     * @param consumer      consumer of the downloaded lines
+     * @return false if the content has not been modified
+     * @throws IOException if the content cannot be downloaded or processed
+     */
+    public static boolean downloadLines(URL url, Proxy proxy, int readTimeout, int socketTimeout, String encoding, long limit, HttpValidators validators, LineConsumer consumer) throws IOException {
+        HttpURLConnection connection = null;
+        InputStream inputStream = null;
+
+        try {
+            connection = openConnection(url, proxy, readTimeout, socketTimeout, validators);
+            if (validators != null) {
+                validators.setNotModified(connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED);
+                if (validators.isNotModified()) {
+                    return false;
+                }
+            }
+
+            if (connection.getResponseCode() >= 400) {
+                throw new IOException("Response status is " + connection.getResponseCode());
+            }
+
+            if (connection.getResponseCode() >= 301) {
+                String location = connection.getHeaderField("Location");
+                return downloadLines(new URL(location), proxy, readTimeout, socketTimeout, encoding, limit, validators, consumer);
+            }
+
+            if (connection.getResponseCode() == 204) {
+                return true;
+            }
+
+            readValidators(connection, validators);
+
+            CountingInputStream countingInputStream = new CountingInputStream(connection.getInputStream());
+            inputStream = countingInputStream;
+
+            if ("gzip".equals(connection.getHeaderField("Content-Encoding"))) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, encoding), READ_BUFFER_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (limit != -1 && countingInputStream.getByteCount() > limit) {
+                    throw new IOException("The response exceeded the limit of " + limit + " bytes");
+                }
+
+                consumer.accept(line);
+            }
+
+            return true;
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Opens a GET connection to the specified url
+     *
+     * @param url           url
+     * @param proxy         proxy to use
+     * @param readTimeout   read timeout
+     * @param socketTimeout connection timeout
+     * @param validators    validators of the previous response or null
+     * @return Connected connection
+     */
+    private static HttpURLConnection openConnection(URL url, Proxy proxy, int readTimeout, int socketTimeout, HttpValidators validators) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) (proxy == null ? url.openConnection() : url.openConnection(proxy));
+        connection.setRequestProperty("User-Agent", USER_AGENT);
+        connection.setReadTimeout(readTimeout);
+        connection.setConnectTimeout(socketTimeout);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        setConditionalHeaders(connection, validators);
+        connection.connect();
+        return connection;
+    }
+
+    /**
+     * Adds conditional request headers
+     *
+     * @param connection Connection
+     * @param validators Validators of the previous response or null
+     */
+    private static void setConditionalHeaders(HttpURLConnection connection, HttpValidators validators) {
+        if (validators == null) {
+            return;
+        }
+
+        if (validators.getEtag() != null) {
+            connection.setRequestProperty("If-None-Match", validators.getEtag());
+        }
+        if (validators.getLastModified() != null) {
+            connection.setRequestProperty("If-Modified-Since", validators.getLastModified());
+        }
+    }
+
+    /**
+     * Reads validators of the response
+     *
+     * @param connection Connection
+     * @param validators Validators to update or null
+     */
+    private static void readValidators(HttpURLConnection connection, HttpValidators validators) {
+        if (validators != null) {
+            validators.setEtag(connection.getHeaderField("ETag"));
+            validators.setLastModified(connection.getHeaderField("Last-Modified"));
+        }
+    }
+
     /**
      * Sends a POST request
      *
@@ -23,13 +23,17 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.preference.PreferenceManager;
 
 import com.adguard.android.contentblocker.commons.RawResources;
+import com.adguard.android.contentblocker.commons.StringHelperUtils;
+import com.adguard.android.contentblocker.commons.web.DomainTrie;
 import com.adguard.android.contentblocker.service.PreferencesService;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -39,7 +43,7 @@ public class DbHelper extends SQLiteOpenHelper {
 
     private static final Logger LOG = LoggerFactory.getLogger(DbHelper.class);
 
-    private static final int DB_VERSION = 25;
+    private static final int DB_VERSION = 27;
     private static final String DB_NAME = "adguard.db";
 
 
@@ -91,11 +95,18 @@ public class DbHelper extends SQLiteOpenHelper {
         // Refresh filters localizations
         fillFiltersLocalization(db);
 
-        preferenceUpgrade.onUpgrade(oldVersion, newVersion);
+        preferenceUpgrade.onUpgrade(db, oldVersion, newVersion);
 
         LOG.info("Performing database upgrade...success");
     }
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Upgrade transaction has been committed at this point
+        preferenceUpgrade.onOpen();
+    }
+
     private void enableDefaultFilters(SQLiteDatabase db) {
         LOG.info("Enabling default filters...");
 
@@ -133,19 +144,43 @@ public class DbHelper extends SQLiteOpenHelper {
 
     private static class PreferenceUpgrade {
         private final Context context;
+        // Keys of the preferences moved to the database by the upgrade
+        private final List<String> movedKeys = new ArrayList<>();
 
         PreferenceUpgrade(Context context) {
             this.context = context;
         }
 
-        void onUpgrade(int oldVersion, int newVersion) {
+        void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Keys of a rolled back upgrade attempt are not removed
+            movedKeys.clear();
             if (oldVersion < newVersion) {
                 for (int version = oldVersion + 1; version <= newVersion; version++) {
                     upgradeUserFilter(version);
+                    upgradeUserRulesStorage(db, version);
+                    upgradeWhitelistStorage(db, version);
                 }
             }
         }
 
+        /**
+         * Removes the preferences which have been moved to the database.
+         * It is called once the database is opened, so the upgrade which moved them has been committed.
+         */
+        void onOpen() {
+            if (movedKeys.isEmpty()) {
+                return;
+            }
+
+            SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(context).edit();
+            for (String key : movedKeys) {
+                editor.remove(key);
+            }
+            editor.apply();
+            LOG.info("Removed {} preferences moved to the database", movedKeys.size());
+            movedKeys.clear();
+        }
+
         private void upgradeUserFilter(int version) {
             if (version == 21) {
                 LOG.info("v2.2 upgrade: user filter conversion");
@@ -169,5 +204,49 @@ public class DbHelper extends SQLiteOpenHelper {
 
             }
         }
+
+        private void upgradeUserRulesStorage(SQLiteDatabase db, int version) {
+            if (version == 26) {
+                LOG.info("User rules are moved from the preferences to the database");
+
+                SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+                String rules = sharedPreferences.getString(PreferencesService.KEY_USER_RULES_STRING, StringUtils.EMPTY);
+                Set<String> disabledRules = sharedPreferences.getStringSet(PreferencesService.KEY_DISABLED_USER_RULES, new HashSet<String>());
+
+                List<String> ruleTexts = StringHelperUtils.splitAndTrim(rules, "\n");
+                UserRuleDaoImpl.insertRules(db, UserRuleDaoImpl.USER_RULES_TABLE, ruleTexts, disabledRules);
+
+                // Preferences are removed in onOpen(), they are kept if the upgrade is rolled back
+                movedKeys.add(PreferencesService.KEY_USER_RULES_STRING);
+                movedKeys.add(PreferencesService.KEY_DISABLED_USER_RULES);
+                LOG.info("{} user rules moved", ruleTexts.size());
+            }
+        }
+
+        private void upgradeWhitelistStorage(SQLiteDatabase db, int version) {
+            if (version == 27) {
+                LOG.info("Whitelist is moved from the preferences to the database");
+
+                SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+                String whitelist = sharedPreferences.getString(PreferencesService.KEY_WHITELIST_STRING, StringUtils.EMPTY);
+                Set<String> disabledDomains = sharedPreferences.getStringSet(PreferencesService.KEY_DISABLED_WHITELIST, new HashSet<String>());
+
+                // Domains are stored normalized, the same way they are kept in the whitelist trie
+                List<String> domains = new ArrayList<>();
+                for (String domain : StringHelperUtils.splitAndTrim(whitelist, "\n")) {
+                    domains.add(DomainTrie.normalize(domain));
+                }
+                Set<String> normalizedDisabledDomains = new HashSet<>();
+                for (String domain : disabledDomains) {
+                    normalizedDisabledDomains.add(DomainTrie.normalize(domain));
+                }
+                UserRuleDaoImpl.insertRules(db, UserRuleDaoImpl.WHITELIST_TABLE, domains, normalizedDisabledDomains);
+
+                // Preferences are removed in onOpen(), they are kept if the upgrade is rolled back
+                movedKeys.add(PreferencesService.KEY_WHITELIST_STRING);
+                movedKeys.add(PreferencesService.KEY_DISABLED_WHITELIST);
+                LOG.info("{} whitelisted domains moved", domains.size());
+            }
+        }
     }
 }
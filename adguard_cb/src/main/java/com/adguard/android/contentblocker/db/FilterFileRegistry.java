@@ -0,0 +1,302 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import android.content.Context;
+
+import com.adguard.android.contentblocker.commons.io.AtomicFile;
+import com.adguard.android.contentblocker.commons.io.IoUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <pre>
+ * Registry of the filter files stored in the internal storage.
+ *
+ * Registry is kept in memory, so checking if a filter file exists or has changed costs no I/O.
+ * It is updated along with the filter files and saved to the internal storage.
+ * If there is no saved registry, it is restored once from the files list.</pre>
+ */
+class FilterFileRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilterFileRegistry.class);
+
+    static final String FILTER_FILE_PREFIX = "filter_";
+    private static final String REGISTRY_FILE_NAME = "filter_files.properties";
+    private static final String LENGTH_KEY = ".length";
+    private static final String MODIFIED_KEY = ".modified";
+    private static final String VERSION_KEY = ".version";
+    private static final String CHECKSUM_KEY = ".checksum";
+    private static final String KNOWN_KEY = ".known";
+
+    private final Context context;
+    private final Map<Integer, FilterFile> filterFiles = new ConcurrentHashMap<>();
+    // Filters which have files derived from the rules (e.g. rule stores), even if their rules are bundled
+    private final Set<Integer> knownFilterIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private volatile boolean loaded;
+
+    /**
+     * Creates an instance of the registry
+     *
+     * @param context Current context
+     */
+    FilterFileRegistry(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Gets the filter file
+     *
+     * @param filterId Filter identifier
+     * @return Filter file or null if there is no filter file in the internal storage
+     */
+    FilterFile get(int filterId) {
+        load();
+        return filterFiles.get(filterId);
+    }
+
+    /**
+     * Registers the filter file which has been written
+     *
+     * @param filterId Filter identifier
+     * @param version  Value of the "! Version:" header or null
+     * @param checksum Value of the "! Checksum:" header or null
+     */
+    synchronized void put(int filterId, String version, String checksum) {
+        load();
+        File file = context.getFileStreamPath(FILTER_FILE_PREFIX + filterId);
+        filterFiles.put(filterId, new FilterFile(file, file.length(), file.lastModified(), version, checksum));
+        knownFilterIds.add(filterId);
+        save();
+    }
+
+    /**
+     * Registers the filter which has files derived from its rules
+     *
+     * @param filterId Filter identifier
+     */
+    synchronized void addKnownFilter(int filterId) {
+        load();
+        if (knownFilterIds.add(filterId)) {
+            save();
+        }
+    }
+
+    /**
+     * Removes all the registered filter files and the files derived from them
+     */
+    synchronized void clear() {
+        load();
+        for (String fileName : context.fileList()) {
+            Integer filterId = parseFilterId(fileName);
+            if (filterId != null && knownFilterIds.contains(filterId)) {
+                context.deleteFile(fileName);
+            }
+        }
+        filterFiles.clear();
+        knownFilterIds.clear();
+        save();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+
+            File registryFile = context.getFileStreamPath(REGISTRY_FILE_NAME);
+            if (registryFile.exists()) {
+                read(registryFile);
+            } else {
+                restore();
+                save();
+            }
+            loaded = true;
+        }
+    }
+
+    private void read(File registryFile) {
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(registryFile);
+            Properties properties = new Properties();
+            properties.load(inputStream);
+
+            for (String name : properties.stringPropertyNames()) {
+                if (!name.endsWith(KNOWN_KEY)) {
+                    continue;
+                }
+
+                int filterId = Integer.parseInt(name.substring(0, name.length() - KNOWN_KEY.length()));
+                knownFilterIds.add(filterId);
+                String length = properties.getProperty(filterId + LENGTH_KEY);
+                if (length != null) {
+                    File file = context.getFileStreamPath(FILTER_FILE_PREFIX + filterId);
+                    filterFiles.put(filterId, new FilterFile(file, Long.parseLong(length),
+                            Long.parseLong(properties.getProperty(filterId + MODIFIED_KEY)),
+                            properties.getProperty(filterId + VERSION_KEY),
+                            properties.getProperty(filterId + CHECKSUM_KEY)));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOG.warn("Cannot read filter files registry, restoring it", ex);
+            filterFiles.clear();
+            knownFilterIds.clear();
+            restore();
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Restores the registry from the files list
+     */
+    private void restore() {
+        for (String fileName : context.fileList()) {
+            Integer filterId = parseFilterId(fileName);
+            if (filterId == null) {
+                continue;
+            }
+
+            knownFilterIds.add(filterId);
+            if (fileName.equals(FILTER_FILE_PREFIX + filterId)) {
+                File file = context.getFileStreamPath(fileName);
+                filterFiles.put(filterId, new FilterFile(file, file.length(), file.lastModified(), null, null));
+            }
+        }
+        LOG.info("Restored filter files registry: {} filter files", filterFiles.size());
+    }
+
+    /**
+     * Parses identifier of the filter the file belongs to
+     *
+     * @param fileName File name, e.g. filter_2 or filter_2.rules
+     * @return Filter identifier or null if it is not a filter file
+     */
+    private static Integer parseFilterId(String fileName) {
+        if (!fileName.startsWith(FILTER_FILE_PREFIX)) {
+            return null;
+        }
+
+        int end = FILTER_FILE_PREFIX.length();
+        while (end < fileName.length() && Character.isDigit(fileName.charAt(end))) {
+            end++;
+        }
+        if (end == FILTER_FILE_PREFIX.length() || (end < fileName.length() && fileName.charAt(end) != '.')) {
+            return null;
+        }
+        return Integer.parseInt(fileName.substring(FILTER_FILE_PREFIX.length(), end));
+    }
+
+    private void save() {
+        Properties properties = new Properties();
+        for (int filterId : knownFilterIds) {
+            properties.setProperty(filterId + KNOWN_KEY, Boolean.TRUE.toString());
+        }
+        for (Map.Entry<Integer, FilterFile> entry : filterFiles.entrySet()) {
+            FilterFile filterFile = entry.getValue();
+            properties.setProperty(entry.getKey() + LENGTH_KEY, Long.toString(filterFile.getLength()));
+            properties.setProperty(entry.getKey() + MODIFIED_KEY, Long.toString(filterFile.getLastModified()));
+            if (filterFile.getVersion() != null) {
+                properties.setProperty(entry.getKey() + VERSION_KEY, filterFile.getVersion());
+            }
+            if (filterFile.getChecksum() != null) {
+                properties.setProperty(entry.getKey() + CHECKSUM_KEY, filterFile.getChecksum());
+            }
+        }
+
+        AtomicFile registryFile = new AtomicFile(context.getFileStreamPath(REGISTRY_FILE_NAME));
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = registryFile.startWrite();
+            properties.store(outputStream, null);
+            registryFile.finishWrite(outputStream);
+        } catch (IOException ex) {
+            LOG.warn("Cannot save filter files registry", ex);
+            registryFile.failWrite(outputStream);
+        }
+    }
+
+    /**
+     * Filter file stored in the internal storage
+     */
+    static class FilterFile {
+
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private final String version;
+        private final String checksum;
+
+        FilterFile(File file, long length, long lastModified, String version, String checksum) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.version = version;
+            this.checksum = checksum;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return Value of the "! Version:" header or null if it is unknown
+         */
+        String getVersion() {
+            return version;
+        }
+
+        /**
+         * @return Value of the "! Checksum:" header or null if it is unknown
+         */
+        String getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * @return Stamp of the file, it changes when the file is replaced
+         */
+        long getStamp() {
+            return lastModified * 31 + length;
+        }
+    }
+}
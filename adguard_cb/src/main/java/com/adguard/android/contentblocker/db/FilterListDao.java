@@ -22,7 +22,9 @@ import com.adguard.android.contentblocker.model.FilterList;
 import java.util.List;
 
 /**
- * Data access object for filter lists
+ * Data access object for filter lists.
+ * Selected lists and filter list objects are shared between the callers and must not be modified directly,
+ * the update methods publish copies with the new values instead.
  */
 public interface FilterListDao {
 
@@ -33,6 +35,13 @@ public interface FilterListDao {
      */
     List<FilterList> selectFilterLists();
 
+    /**
+     * Selects enabled filter lists
+     *
+     * @return Enabled filter lists
+     */
+    List<FilterList> selectEnabledFilterLists();
+
     /**
      * Selects filter list by specified id.
      *
@@ -63,8 +72,8 @@ public interface FilterListDao {
     void updateFilterEnabled(FilterList filter, boolean enabled);
 
     /**
-     * Update filter id DB
-     * @param filter filter with new info
+     * Update filters in DB in a single transaction
+     * @param filters filters with new info
      */
-    void updateFilter(FilterList filter);
+    void updateFilters(List<FilterList> filters);
 }
@@ -16,49 +16,52 @@
  */
 package com.adguard.android.contentblocker.db;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.adguard.android.contentblocker.commons.RawResources;
 import com.adguard.android.contentblocker.model.FilterList;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
- * Filter list dao implementation (using db)
+ * Filter list dao implementation (using db).
+ * <p>
+ * Filter lists are read once into an in-memory snapshot which is shared by all the readers.
+ * Snapshot objects are never modified: every write publishes a new snapshot with copies of the updated lists.
+ * The snapshot is dropped if a write fails and when the default locale changes.
  */
 public class FilterListDaoImpl implements FilterListDao {
     private static final String FILTER_LISTS_TABLE = "filter_lists";
     private static final String FILTER_LIST_ID = "filter_list_id";
-    private static final String FILTER_LIST_NAME = "filter_name";
-    private static final String FILTER_LIST_DESCRIPTION = "filter_description";
     private static final String FILTER_LIST_ENABLED = "enabled";
     private static final String FILTER_LIST_VERSION = "version";
     private static final String FILTER_LIST_TIME_UPDATED = "time_updated";
     private static final String FILTER_LIST_TIME_LAST_DOWNLOADED = "time_last_downloaded";
-    private static final String FILTER_LIST_DISPLAY_ORDER = "display_order";
-
-    private static final String[] COLUMNS = {
-            FILTER_LIST_ID,
-            FILTER_LIST_NAME,
-            FILTER_LIST_DESCRIPTION,
-            FILTER_LIST_ENABLED,
-            FILTER_LIST_VERSION,
-            FILTER_LIST_TIME_UPDATED,
-            FILTER_LIST_TIME_LAST_DOWNLOADED,
-            FILTER_LIST_DISPLAY_ORDER
-    };
+
+    private static final String UPDATE_ENABLED_SQL = "UPDATE " + FILTER_LISTS_TABLE +
+            " SET " + FILTER_LIST_ENABLED + "=? WHERE " + FILTER_LIST_ID + "=?";
+    private static final String UPDATE_FILTER_SQL = "UPDATE " + FILTER_LISTS_TABLE +
+            " SET " + FILTER_LIST_VERSION + "=?, " + FILTER_LIST_TIME_UPDATED + "=?, " + FILTER_LIST_TIME_LAST_DOWNLOADED + "=?" +
+            " WHERE " + FILTER_LIST_ID + "=?";
 
     private final Context context;
     private final DbHelper dbHelper;
 
-    private int cachedFilterCount = 0;
-    private int cachedEnabledFilterCount = 0;
+    private volatile Snapshot snapshot;
+
+    // Statements are compiled once for the database they were created for
+    private SQLiteDatabase statementsDb;
+    private SQLiteStatement updateEnabledStatement;
+    private SQLiteStatement updateFilterStatement;
 
     public FilterListDaoImpl(Context context, DbHelper dbHelper) {
         this.context = context;
@@ -67,111 +70,187 @@ public class FilterListDaoImpl implements FilterListDao {
 
     @Override
     public List<FilterList> selectFilterLists() {
-        List<FilterList> items = new ArrayList<>();
-
-        Cursor cursor = null;
-        try {
-            SQLiteDatabase db = dbHelper.getReadableDatabase();
-
-            Locale locale = Locale.getDefault();
-            cursor = db.rawQuery(RawResources.getSelectFiltersScript(context, locale.getLanguage(), locale.getCountry()), null);
-            while (cursor.moveToNext()) {
-                items.add(parseFilterList(cursor));
-            }
-        } finally {
-            closeCursor(cursor);
-        }
+        return getSnapshot().filterLists;
+    }
 
-        return items;
+    @Override
+    public List<FilterList> selectEnabledFilterLists() {
+        return getSnapshot().enabledFilterLists;
     }
 
     @Override
     public FilterList selectFilterList(final int filterListId) {
-        FilterList result = null;
-
-        Cursor cursor = null;
-        try {
-            SQLiteDatabase db = dbHelper.getReadableDatabase();
-            cursor = db.query(FILTER_LISTS_TABLE,
-                    COLUMNS,
-                    FILTER_LIST_ID + "=?",
-                    new String[]{String.valueOf(filterListId)},
-                    null,
-                    null,
-                    null);
-
-            if (cursor != null) {
-                cursor.moveToFirst();
-                if (cursor.getCount() > 0)
-                    result = parseFilterList(cursor);
-            }
-
-        } finally {
-            closeCursor(cursor);
-        }
-
-        return result;
+        return getSnapshot().filterListsById.get(filterListId);
     }
 
     @Override
     public int getFilterListCount() {
-        if (cachedFilterCount > 0) {
-            return cachedFilterCount;
-        } else {
-            cachedFilterCount = selectFilterLists().size();
-            return cachedFilterCount;
-        }
+        return getSnapshot().filterLists.size();
     }
 
     @Override
     public int getEnabledFilterListCount() {
-        if (cachedEnabledFilterCount > 0) {
-            return cachedEnabledFilterCount;
-        } else {
-            cachedEnabledFilterCount = 0;
-            List<FilterList> filterLists = selectFilterLists();
-            for (FilterList filterList : filterLists) {
-                if (filterList.isEnabled()) {
-                    cachedEnabledFilterCount++;
-                }
-            }
-            return cachedEnabledFilterCount;
-        }
+        return getSnapshot().enabledFilterLists.size();
     }
 
     @Override
-    public void updateFilterEnabled(FilterList filter, boolean enabled) {
+    public synchronized void updateFilterEnabled(FilterList filter, boolean enabled) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
+        prepareStatements(db);
 
-        ContentValues values = new ContentValues();
-        values.put(FILTER_LIST_ENABLED, enabled ? 1 : 0);
+        Snapshot current = snapshot;
+        snapshot = null;
         try {
             db.beginTransaction();
-            db.update(FILTER_LISTS_TABLE, values, FILTER_LIST_ID + "=?", new String[]{Integer.toString(filter.getFilterId())});
+            updateEnabledStatement.bindLong(1, enabled ? 1 : 0);
+            updateEnabledStatement.bindLong(2, filter.getFilterId());
+            updateEnabledStatement.executeUpdateDelete();
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
 
-        cachedEnabledFilterCount = 0;
+        FilterList updated = copyFilterList(current, filter);
+        updated.setEnabled(enabled);
+        snapshot = withUpdatedFilters(current, Collections.singletonList(updated));
     }
 
     @Override
-    public void updateFilter(FilterList filter) {
+    public synchronized void updateFilters(List<FilterList> filters) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
+        prepareStatements(db);
 
-        ContentValues values = new ContentValues();
-        values.put(FILTER_LIST_VERSION, filter.getVersion().getLongVersionString());
-        values.put(FILTER_LIST_TIME_UPDATED, filter.getTimeUpdated().getTime());
-        values.put(FILTER_LIST_TIME_LAST_DOWNLOADED, filter.getLastTimeDownloaded().getTime());
-
+        Snapshot current = snapshot;
+        snapshot = null;
         try {
             db.beginTransaction();
-            db.update(FILTER_LISTS_TABLE, values, FILTER_LIST_ID + "=?", new String[]{Integer.toString(filter.getFilterId())});
+            for (FilterList filter : filters) {
+                bindAndUpdateFilter(filter);
+            }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
+
+        List<FilterList> updated = new ArrayList<>(filters.size());
+        for (FilterList filter : filters) {
+            FilterList copy = copyFilterList(current, filter);
+            copy.setVersion(filter.getVersion().getLongVersionString());
+            copy.setTimeUpdated(filter.getTimeUpdated());
+            copy.setLastTimeDownloaded(filter.getLastTimeDownloaded());
+            updated.add(copy);
+        }
+        snapshot = withUpdatedFilters(current, updated);
+    }
+
+    /**
+     * Copies the filter list from the snapshot so that only the written fields are changed in the copy
+     *
+     * @param current Snapshot to copy from, can be null
+     * @param filter  Filter list passed by the caller
+     * @return Copy of the snapshot filter list or of the passed one if the snapshot does not have it
+     */
+    private static FilterList copyFilterList(Snapshot current, FilterList filter) {
+        FilterList source = current != null ? current.filterListsById.get(filter.getFilterId()) : null;
+        return new FilterList(source != null ? source : filter);
+    }
+
+    /**
+     * Creates a new snapshot where the filter lists are replaced with the updated ones.
+     * Must be called under the lock.
+     *
+     * @param current Snapshot to base on, can be null
+     * @param updated Updated copies of the filter lists
+     * @return New snapshot or null if there was no snapshot to base on
+     */
+    private static Snapshot withUpdatedFilters(Snapshot current, List<FilterList> updated) {
+        if (current == null || !current.locale.equals(Locale.getDefault())) {
+            return null;
+        }
+
+        Map<Integer, FilterList> updatedById = new HashMap<>();
+        for (FilterList filter : updated) {
+            updatedById.put(filter.getFilterId(), filter);
+        }
+
+        List<FilterList> filterLists = new ArrayList<>(current.filterLists.size());
+        for (FilterList filter : current.filterLists) {
+            FilterList replacement = updatedById.get(filter.getFilterId());
+            filterLists.add(replacement != null ? replacement : filter);
+        }
+        return new Snapshot(current.locale, filterLists);
+    }
+
+    /**
+     * Binds the filter metadata to the compiled update statement and executes it.
+     * Must be called inside a transaction.
+     *
+     * @param filter Filter with new info
+     */
+    private void bindAndUpdateFilter(FilterList filter) {
+        updateFilterStatement.bindString(1, filter.getVersion().getLongVersionString());
+        updateFilterStatement.bindLong(2, filter.getTimeUpdated().getTime());
+        updateFilterStatement.bindLong(3, filter.getLastTimeDownloaded().getTime());
+        updateFilterStatement.bindLong(4, filter.getFilterId());
+        updateFilterStatement.executeUpdateDelete();
+    }
+
+    /**
+     * Compiles the update statements if they have not been compiled for this database yet
+     *
+     * @param db Writable database
+     */
+    private void prepareStatements(SQLiteDatabase db) {
+        if (statementsDb == db) {
+            return;
+        }
+
+        if (updateEnabledStatement != null) {
+            updateEnabledStatement.close();
+            updateFilterStatement.close();
+        }
+        updateEnabledStatement = db.compileStatement(UPDATE_ENABLED_SQL);
+        updateFilterStatement = db.compileStatement(UPDATE_FILTER_SQL);
+        statementsDb = db;
+    }
+
+    /**
+     * Gets the snapshot of the filter lists, it is loaded from the database if there is no valid one
+     *
+     * @return Filter lists snapshot
+     */
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        Locale locale = Locale.getDefault();
+        if (current != null && current.locale.equals(locale)) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || !current.locale.equals(locale)) {
+                current = new Snapshot(locale, loadFilterLists(locale));
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private List<FilterList> loadFilterLists(Locale locale) {
+        List<FilterList> items = new ArrayList<>();
+
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery(RawResources.getSelectFiltersScript(context, locale.getLanguage(), locale.getCountry()), null);
+            while (cursor.moveToNext()) {
+                items.add(parseFilterList(cursor));
+            }
+        } finally {
+            closeCursor(cursor);
+        }
+
+        return items;
     }
 
     private FilterList parseFilterList(Cursor cursor) {
@@ -194,4 +273,31 @@ public class FilterListDaoImpl implements FilterListDao {
             cursor.close();
         }
     }
+
+    /**
+     * Filter lists read from the database
+     */
+    private static class Snapshot {
+
+        private final Locale locale;
+        private final List<FilterList> filterLists;
+        private final List<FilterList> enabledFilterLists;
+        private final Map<Integer, FilterList> filterListsById;
+
+        Snapshot(Locale locale, List<FilterList> filterLists) {
+            this.locale = locale;
+            this.filterLists = Collections.unmodifiableList(filterLists);
+
+            List<FilterList> enabled = new ArrayList<>();
+            Map<Integer, FilterList> byId = new HashMap<>();
+            for (FilterList filterList : filterLists) {
+                if (filterList.isEnabled()) {
+                    enabled.add(filterList);
+                }
+                byId.put(filterList.getFilterId(), filterList);
+            }
+            this.enabledFilterLists = Collections.unmodifiableList(enabled);
+            this.filterListsById = byId;
+        }
+    }
 }
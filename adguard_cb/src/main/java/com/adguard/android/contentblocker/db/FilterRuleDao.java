@@ -16,6 +16,13 @@
  */
 package com.adguard.android.contentblocker.db;
 
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
+import com.adguard.android.contentblocker.commons.io.LineProducer;
+import com.adguard.android.contentblocker.commons.io.RcsPatch;
+import com.adguard.android.contentblocker.model.RuleDiff;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -32,18 +39,86 @@ public interface FilterRuleDao {
     List<String> selectRuleTexts(List<Integer> filterIds, boolean useCosmetics);
 
     /**
-     * Inserts batch of rules to the specified filter.
+     * Reads rules of the specified filter one by one without keeping them in memory
+     *
+     * @param filterId     Filter ID
+     * @param useCosmetics If false - cosmetic rules are skipped
+     * @param consumer     Consumer of the rules
+     * @throws IOException if the rules cannot be read
+     */
+    void readRules(int filterId, boolean useCosmetics, LineConsumer consumer) throws IOException;
+
+    /**
+     * Gets the compiled rule store of the specified filter.
+     * Rule store is compiled again if the filter rules have changed since the last compilation.
+     *
+     * @param filterId Filter ID
+     * @return Rule store file
+     * @throws IOException if the rule store cannot be compiled
+     * @see com.adguard.android.contentblocker.commons.io.RuleStore
+     */
+    File getRuleStore(int filterId) throws IOException;
+
+    /**
+     * Gets the difference between the filter rules before and after the last update.
+     * It is calculated when the rule store is compiled.
      *
-     * @param filterId Filter to insert rules to
-     * @param rules    Rules to be inserted
+     * @param filterId Filter ID
+     * @return Rule diff or null if it is unknown
      */
-    void setFilterRules(int filterId, List<String> rules);
+    RuleDiff getRuleDiff(int filterId);
 
     /**
-     * Checks if we have filter rules for this filter locally
+     * Replaces rules of the specified filter.
+     * Rules are written to a temporary file which replaces the filter file
+     * only if all of them were written successfully.
+     *
+     * @param filterId Filter to replace rules of
+     * @param rules    Producer of the new rules. If it returns false, the filter is left unchanged.
+     * @return true if the rules have been replaced
+     * @throws IOException if the rules cannot be produced or written
+     */
+    boolean setFilterRules(int filterId, LineProducer rules) throws IOException;
+
+    /**
+     * Checks if we have filter rules for this filter locally.
+     * Rules bundled with the app are taken into account as well.
      *
      * @param filterId Filter id to check
      * @return True if we do not need to download rules, False otherwise
      */
     boolean hasFilterRules(int filterId);
+
+    /**
+     * Gets the time when the filter rules were stored locally
+     *
+     * @param filterId Filter id
+     * @return Last modification time or 0 if there are no filter rules stored locally
+     */
+    long getFilterRulesTimestamp(int filterId);
+
+    /**
+     * Removes all the filter rules stored locally along with the files compiled from them.
+     * Rules bundled with the app are used after that.
+     */
+    void clearFilterRules();
+
+    /**
+     * Gets the value of the filter header (e.g. "! Version: 2.0.1.1")
+     *
+     * @param filterId Filter id
+     * @param name     Header name
+     * @return Header value or null if there is no such header
+     */
+    String getFilterHeader(int filterId, String name);
+
+    /**
+     * Applies the patch to the locally stored filter rules.
+     * Result is verified against the "! Checksum:" header and is saved only if it matches.
+     *
+     * @param filterId Filter id
+     * @param patch    Patch to apply
+     * @return true if the patch has been applied
+     */
+    boolean applyPatch(int filterId, RcsPatch patch);
 }
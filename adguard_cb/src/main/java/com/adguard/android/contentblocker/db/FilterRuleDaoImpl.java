@@ -17,25 +17,42 @@
 package com.adguard.android.contentblocker.db;
 
 import android.content.Context;
-import android.content.res.Resources;
 
-import androidx.annotation.Nullable;
+import com.adguard.android.contentblocker.commons.FilterChecksum;
+import com.adguard.android.contentblocker.commons.HashUtils;
+import com.adguard.android.contentblocker.commons.PackageUtils;
+import com.adguard.android.contentblocker.commons.LongHashSet;
+import com.adguard.android.contentblocker.commons.io.AtomicFile;
+import com.adguard.android.contentblocker.commons.io.IoUtils;
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
+import com.adguard.android.contentblocker.commons.io.LineProducer;
+import com.adguard.android.contentblocker.commons.io.RcsPatch;
+import com.adguard.android.contentblocker.commons.io.RuleStoreReader;
+import com.adguard.android.contentblocker.commons.io.RuleStoreWriter;
+import com.adguard.android.contentblocker.model.RuleDiff;
+import com.adguard.android.contentblocker.model.RuleType;
 
-import org.apache.commons.collections4.list.SetUniqueList;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Filter rules dao implementation using android internal storage
@@ -44,13 +61,26 @@ public class FilterRuleDaoImpl implements FilterRuleDao {
 
     private final Logger log = LoggerFactory.getLogger(FilterRuleDaoImpl.class);
     private final Context context;
+    private final FilterFileRegistry fileRegistry;
+    // Source stamps of the rule stores which are known to be up to date
+    private final Map<Integer, Long> ruleStoreStamps = new ConcurrentHashMap<>();
+    // Bundled resources can't change while the app is running
+    private final Map<Integer, Integer> rawResourceIds = new ConcurrentHashMap<>();
 
-    private static final String MASK_CSS_RULE = "##";
-    private static final String MASK_CSS_EXCEPTION_RULE = "#@#";
-    private static final String MASK_CSS_INJECT_RULE = "#$#";
-    private static final String MASK_CSS_INJECT_EXCEPTION_RULE = "#@$#";
-    private static final String MASK_SCRIPT_RULE = "#%#";
-    private static final String MASK_CONTENT_RULE = "$$";
+    private static final String COMMENT_PREFIX = "!";
+    private static final String ADBLOCK_META_START = "[Adblock";
+    private static final String VERSION_HEADER = "Version";
+    private static final String CHECKSUM_HEADER = "Checksum";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String RULE_STORE_SUFFIX = ".rules";
+    private static final String RULE_DIFF_SUFFIX = ".diff";
+    private static final String DIFF_SOURCE_STAMP_KEY = "source.stamp";
+    private static final String DIFF_ADDED_KEY = "added";
+    private static final String DIFF_REMOVED_KEY = "removed";
+    private static final String DIFF_UNCHANGED_KEY = "unchanged";
+    private static final String DIFF_FINGERPRINT_KEY = "fingerprint";
+    private static final String DIFF_COMMENTS_FINGERPRINT_KEY = "comments.fingerprint";
+    private static final String DIFF_TIMESTAMP_KEY = "timestamp";
 
     /**
      * Creates an instance of the filter rules internal storage
@@ -59,16 +89,34 @@ public class FilterRuleDaoImpl implements FilterRuleDao {
      */
     public FilterRuleDaoImpl(Context context) {
         this.context = context;
+        this.fileRegistry = new FilterFileRegistry(context);
     }
 
     @Override
     public List<String> selectRuleTexts(List<Integer> filterIds, boolean useCosmetics) {
-        List<String> rules = SetUniqueList.setUniqueList(new ArrayList<>());
+        final List<String> rules = new ArrayList<>();
+        final LongHashSet fingerprints = new LongHashSet();
 
         for (int filterId : filterIds) {
-            List<String> list = getRules(filterId, useCosmetics);
-            if (list != null) {
-                rules.addAll(list);
+            RuleStoreReader reader = null;
+            try {
+                reader = new RuleStoreReader(getRuleStore(filterId));
+                for (RuleType type : RuleType.values()) {
+                    if (!useCosmetics && type.isCosmetic()) {
+                        continue;
+                    }
+
+                    reader.select(type);
+                    while (reader.next()) {
+                        if (fingerprints.add(reader.getFingerprint())) {
+                            rules.add(reader.getRule());
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                log.error("Cannot select rules for filter {}", filterId, ex);
+            } finally {
+                IoUtils.closeQuietly(reader);
             }
         }
 
@@ -76,125 +124,473 @@ public class FilterRuleDaoImpl implements FilterRuleDao {
     }
 
     @Override
-    public void setFilterRules(int filterId, List<String> rules) {
+    public void readRules(int filterId, boolean useCosmetics, LineConsumer consumer) throws IOException {
+        RuleStoreReader reader = null;
+        try {
+            reader = new RuleStoreReader(getRuleStore(filterId));
+            for (RuleType type : RuleType.values()) {
+                if (!useCosmetics && type.isCosmetic()) {
+                    continue;
+                }
+
+                reader.select(type);
+                while (reader.next()) {
+                    consumer.accept(reader.getRule());
+                }
+            }
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+    }
+
+    @Override
+    public synchronized File getRuleStore(int filterId) throws IOException {
+        String fileName = getFilterFileName(filterId);
+        File storeFile = context.getFileStreamPath(fileName + RULE_STORE_SUFFIX);
+
+        long sourceStamp = getSourceStamp(filterId);
+        Long storeStamp = ruleStoreStamps.get(filterId);
+        if (storeStamp != null && storeStamp == sourceStamp) {
+            return storeFile;
+        }
+        if (storeFile.exists() && readSourceStamp(storeFile) == sourceStamp) {
+            ruleStoreStamps.put(filterId, sourceStamp);
+            return storeFile;
+        }
+
+        log.info("Compiling rule store of filter {}", filterId);
+        // Previous rules are compared with the new ones by their fingerprints
+        LongHashSet previousFingerprints = storeFile.exists() ? readFingerprints(storeFile) : new LongHashSet();
+        LongHashSet fingerprints = new LongHashSet(previousFingerprints.size());
+        int unchangedCount = 0;
+        long rulesFingerprint = 0;
+        long commentsFingerprint = 0;
+
+        File tempFile = context.getFileStreamPath(fileName + RULE_STORE_SUFFIX + TEMP_FILE_SUFFIX);
+        InputStream inputStream = null;
+        BufferedReader reader = null;
+        RuleStoreWriter writer = null;
         try {
-            String fileName = getOrCreateFilterFile(filterId);
-            context.deleteFile(fileName);
-            OutputStream outputStream = context.getApplicationContext().openFileOutput(fileName, Context.MODE_PRIVATE);
+            inputStream = openFilterRules(filterId);
+            reader = new BufferedReader(new InputStreamReader(inputStream, "utf-8"));
+            writer = new RuleStoreWriter(tempFile, sourceStamp);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Filter is stored as downloaded, rules are trimmed only here
+                String rule = StringUtils.trim(line);
+                if (rule.isEmpty()) {
+                    continue;
+                }
+
+                RuleType type = RuleType.classify(rule);
+                long fingerprint = HashUtils.fingerprint(rule);
+                writer.write(type, fingerprint, rule);
+
+                if (type == RuleType.COMMENT) {
+                    commentsFingerprint = commentsFingerprint * 31 + fingerprint;
+                } else if (fingerprints.add(fingerprint)) {
+                    rulesFingerprint += fingerprint;
+                    if (previousFingerprints.contains(fingerprint)) {
+                        unchangedCount++;
+                    }
+                }
+            }
+            writer.close();
 
-            IOUtils.writeLines(rules, null, outputStream, "UTF-8");
-        } catch (Exception ex) {
-            log.error("Cannot insert new rules to filter {}:\r\n{}", filterId, ex);
-            throw new RuntimeException("Cannot insert new rules to filter " + filterId, ex);
+            RuleDiff diff = new RuleDiff(fingerprints.size() - unchangedCount, previousFingerprints.size() - unchangedCount,
+                    unchangedCount, rulesFingerprint, commentsFingerprint, System.currentTimeMillis());
+            log.info("Rules of filter {} have changed: {}", filterId, diff);
+            // Diff is saved first, it is valid only along with the rule store having the same source stamp
+            saveRuleDiff(fileName, sourceStamp, diff);
+
+            fileRegistry.addKnownFilter(filterId);
+            if (!tempFile.renameTo(storeFile)) {
+                throw new IOException("Cannot replace rule store of filter " + filterId);
+            }
+            ruleStoreStamps.put(filterId, sourceStamp);
+            return storeFile;
+        } finally {
+            IOUtils.closeQuietly(reader);
+            IOUtils.closeQuietly(inputStream);
+            IoUtils.closeQuietly(writer);
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
         }
     }
 
+    @Override
+    public synchronized RuleDiff getRuleDiff(int filterId) {
+        try {
+            getRuleStore(filterId);
+        } catch (IOException ex) {
+            log.warn("Cannot compile rule store of filter {}", filterId, ex);
+            return null;
+        }
+
+        File diffFile = context.getFileStreamPath(getFilterFileName(filterId) + RULE_DIFF_SUFFIX);
+        if (!diffFile.exists()) {
+            return null;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(diffFile);
+            Properties properties = new Properties();
+            properties.load(inputStream);
+
+            if (!Long.toString(getSourceStamp(filterId)).equals(properties.getProperty(DIFF_SOURCE_STAMP_KEY))
+                    || !properties.containsKey(DIFF_COMMENTS_FINGERPRINT_KEY)) {
+                // Diff is outdated or it has been saved without the comments fingerprint
+                return null;
+            }
+
+            return new RuleDiff(
+                    Integer.parseInt(properties.getProperty(DIFF_ADDED_KEY)),
+                    Integer.parseInt(properties.getProperty(DIFF_REMOVED_KEY)),
+                    Integer.parseInt(properties.getProperty(DIFF_UNCHANGED_KEY)),
+                    Long.parseLong(properties.getProperty(DIFF_FINGERPRINT_KEY)),
+                    Long.parseLong(properties.getProperty(DIFF_COMMENTS_FINGERPRINT_KEY)),
+                    Long.parseLong(properties.getProperty(DIFF_TIMESTAMP_KEY)));
+        } catch (IOException | NumberFormatException ex) {
+            log.warn("Cannot read rule diff of filter {}", filterId, ex);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    @Override
+    public boolean setFilterRules(int filterId, LineProducer rules) throws IOException {
+        AtomicFile filterFile = new AtomicFile(context.getFileStreamPath(getFilterFileName(filterId)));
+        FileOutputStream outputStream = filterFile.startWrite();
+        try {
+            final Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, "utf-8"));
+            final HeaderCollector headers = new HeaderCollector();
+            boolean produced = rules.produce(line -> {
+                headers.collect(line);
+                out.write(line);
+                out.write('\n');
+            });
+            out.flush();
+            if (!produced) {
+                filterFile.failWrite(outputStream);
+                return false;
+            }
+
+            filterFile.finishWrite(outputStream);
+            fileRegistry.put(filterId, headers.version, headers.checksum);
+        } catch (IOException | RuntimeException ex) {
+            filterFile.failWrite(outputStream);
+            throw ex;
+        }
+
+        updateRuleStore(filterId);
+        return true;
+    }
+
     @Override
     public boolean hasFilterRules(int filterId) {
-        String filterName = "filter_" + filterId;
+        return fileRegistry.get(filterId) != null || getRawResourceId(filterId) > 0;
+    }
+
+    @Override
+    public long getFilterRulesTimestamp(int filterId) {
+        FilterFileRegistry.FilterFile filterFile = fileRegistry.get(filterId);
+        if (filterFile != null) {
+            return filterFile.getLastModified();
+        }
+        return getRawResourceId(filterId) > 0 ? PackageUtils.getLastUpdateTime(context) : 0;
+    }
+
+    @Override
+    public synchronized void clearFilterRules() {
+        ruleStoreStamps.clear();
+        fileRegistry.clear();
+    }
+
+    @Override
+    public String getFilterHeader(int filterId, String name) {
+        // Headers which are known to the registry are not read from the file
+        FilterFileRegistry.FilterFile filterFile = fileRegistry.get(filterId);
+        if (filterFile != null) {
+            if (VERSION_HEADER.equalsIgnoreCase(name) && filterFile.getVersion() != null) {
+                return filterFile.getVersion();
+            }
+            if (CHECKSUM_HEADER.equalsIgnoreCase(name) && filterFile.getChecksum() != null) {
+                return filterFile.getChecksum();
+            }
+        }
+
+        InputStream inputStream = null;
+        BufferedReader reader = null;
+        try {
+            inputStream = openFilterRules(filterId);
+            reader = new BufferedReader(new InputStreamReader(inputStream, "utf-8"));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                String value = parseHeader(line, name);
+                if (value != null) {
+                    return value;
+                }
+                if (!isHeaderLine(line)) {
+                    // Header is over
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            log.error("Cannot read header {} of filter {}", name, filterId, ex);
+        } finally {
+            IOUtils.closeQuietly(reader);
+            IOUtils.closeQuietly(inputStream);
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean applyPatch(int filterId, RcsPatch patch) {
+        AtomicFile filterFile = new AtomicFile(context.getFileStreamPath(getFilterFileName(filterId)));
+
+        InputStream inputStream = null;
+        BufferedReader reader = null;
+        FileOutputStream outputStream = null;
+        try {
+            inputStream = openFilterRules(filterId);
+            reader = new BufferedReader(new InputStreamReader(inputStream, "utf-8"));
+            outputStream = filterFile.startWrite();
+            final Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, "utf-8"));
+
+            final FilterChecksum checksum = new FilterChecksum();
+            final HeaderCollector headers = new HeaderCollector();
+            patch.apply(reader, line -> {
+                checksum.update(line);
+                headers.collect(line);
+                out.write(line);
+                out.write('\n');
+            });
+            out.flush();
 
-        String[] strings = context.getApplicationContext().fileList();
-        return ArrayUtils.contains(strings, filterName);
+            if (!checksum.verify()) {
+                log.warn("Patched filter {} does not match checksum {}", filterId, checksum.getExpectedChecksum());
+                return false;
+            }
+
+            filterFile.finishWrite(outputStream);
+            outputStream = null;
+            fileRegistry.put(filterId, headers.version, headers.checksum);
+            updateRuleStore(filterId);
+            return true;
+        } catch (IOException ex) {
+            log.warn("Cannot apply patch to filter {}", filterId, ex);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(reader);
+            IOUtils.closeQuietly(inputStream);
+            if (outputStream != null) {
+                filterFile.failWrite(outputStream);
+            }
+        }
     }
 
     /**
-     * Gets or creates filter file
+     * Opens the filter rules.
+     * Bundled rules are read from the raw resource in place, they are written to
+     * the internal storage only when the filter is updated.
      *
      * @param filterId Filter identifier
-     * @return Filter file name
+     * @return Input stream of the filter rules
+     * @throws FileNotFoundException if there are no rules of the filter
      */
-    private String getOrCreateFilterFile(int filterId) throws IOException {
-        String[] files = context.fileList();
-        String fileName = "filter_" + filterId;
+    private InputStream openFilterRules(int filterId) throws IOException {
+        FilterFileRegistry.FilterFile filterFile = fileRegistry.get(filterId);
+        if (filterFile != null) {
+            return new FileInputStream(filterFile.getFile());
+        }
 
-        if (!ArrayUtils.contains(files, fileName)) {
-            initDefaultFilterRules(fileName);
+        int resourceId = getRawResourceId(filterId);
+        if (resourceId > 0) {
+            log.info("Reading bundled rules of filter {}", filterId);
+            return context.getResources().openRawResource(resourceId);
         }
 
-        return fileName;
+        throw new FileNotFoundException("There are no rules of filter " + filterId);
     }
 
     /**
-     * Adds rules from the specified filter to the list
+     * Gets the stamp of the filter rules, it changes when the rules are replaced
      *
-     * @param filterId Filter ID
+     * @param filterId Filter identifier
+     * @return Stamp of the local filter file or of the bundled rules if there is no local file
+     */
+    private long getSourceStamp(int filterId) {
+        FilterFileRegistry.FilterFile filterFile = fileRegistry.get(filterId);
+        if (filterFile != null) {
+            return filterFile.getStamp();
+        }
+
+        // Bundled rules change only along with the package
+        int resourceId = getRawResourceId(filterId);
+        return resourceId > 0 ? PackageUtils.getLastUpdateTime(context) * 31 + resourceId : 0;
+    }
+
+    /**
+     * Gets identifier of the raw resource with the bundled filter rules
      *
-     * @return List of rules
+     * @param filterId Filter identifier
+     * @return Resource identifier or 0 if the filter is not bundled
      */
-    @Nullable
-    private List<String> getRules(int filterId, boolean useCosmetics) {
-        InputStream inputStream = null;
-        InputStreamReader inputStreamReader = null;
-        BufferedReader reader = null;
+    private int getRawResourceId(int filterId) {
+        Integer resourceId = rawResourceIds.get(filterId);
+        if (resourceId == null) {
+            resourceId = context.getResources().getIdentifier(getFilterFileName(filterId), "raw", context.getPackageName());
+            rawResourceIds.put(filterId, resourceId);
+        }
+        return resourceId;
+    }
 
-        List<String> rules = new ArrayList<>();
-        try {
-            String fileName = getOrCreateFilterFile(filterId);
+    private static String getFilterFileName(int filterId) {
+        return FilterFileRegistry.FILTER_FILE_PREFIX + filterId;
+    }
 
-            inputStream = context.getApplicationContext().openFileInput(fileName);
-            inputStreamReader = new InputStreamReader(inputStream);
-            reader = new BufferedReader(inputStreamReader);
+    /**
+     * Parses the header line
+     *
+     * @param line Filter line
+     * @param name Header name
+     * @return Header value or null if the line is not the specified header
+     */
+    private static String parseHeader(String line, String name) {
+        String prefix = COMMENT_PREFIX + " " + name + ":";
+        return StringUtils.startsWithIgnoreCase(line, prefix) ? StringUtils.trimToNull(line.substring(prefix.length())) : null;
+    }
 
-            String line = reader.readLine();
-            while (line != null) {
-                if (useCosmetics || !isCosmeticRule(line)) {
-                    rules.add(line);
-                }
-                line = reader.readLine();
+    private static boolean isHeaderLine(String line) {
+        return line.startsWith(COMMENT_PREFIX) || line.startsWith(ADBLOCK_META_START);
+    }
+
+    /**
+     * Collects headers of the filter while it is being written
+     */
+    private static class HeaderCollector {
+
+        private boolean headerOver;
+        private String version;
+        private String checksum;
+
+        void collect(String line) {
+            if (headerOver || StringUtils.isBlank(line)) {
+                return;
+            }
+            if (!isHeaderLine(line)) {
+                headerOver = true;
+                return;
+            }
+
+            if (version == null) {
+                version = parseHeader(line, VERSION_HEADER);
+            }
+            if (checksum == null) {
+                checksum = parseHeader(line, CHECKSUM_HEADER);
             }
-            return rules;
-        } catch (Exception ex) {
-            log.error("Cannot select rules for filter {}", filterId, ex);
-            return null;
-        } finally {
-            IOUtils.closeQuietly(inputStream);
-            IOUtils.closeQuietly(inputStreamReader);
-            IOUtils.closeQuietly(reader);
         }
     }
 
     /**
-     * Returns true if rule is CSS, JS or Content
+     * Compiles rule store of the filter right after its rules have been replaced,
+     * so that it is not compiled when the filters file is needed.
+     * If it fails, rule store is compiled again on the next access.
      *
-     * @param ruleText Rule text
-     * @return true if rule is CSS, JS or Content
+     * @param filterId Filter identifier
      */
-    private static boolean isCosmeticRule(String ruleText) {
-        return StringUtils.isEmpty(ruleText) ||
-                ruleText.contains(MASK_CSS_RULE) ||
-                ruleText.contains(MASK_CSS_EXCEPTION_RULE) ||
-                ruleText.contains(MASK_CSS_INJECT_RULE) ||
-                ruleText.contains(MASK_CSS_INJECT_EXCEPTION_RULE) ||
-                ruleText.contains(MASK_SCRIPT_RULE) ||
-                ruleText.contains(MASK_CONTENT_RULE);
+    private void updateRuleStore(int filterId) {
+        try {
+            getRuleStore(filterId);
+        } catch (IOException ex) {
+            log.warn("Cannot compile rule store of filter {}", filterId, ex);
+        }
     }
 
     /**
-     * Initializes file with default filter rules
+     * Reads fingerprints of the rules in the rule store, comments are skipped
      *
-     * @param fileName File name
+     * @param storeFile Rule store file
+     * @return Set of the fingerprints, empty if the rule store cannot be read
      */
-    private void initDefaultFilterRules(String fileName) throws IOException {
-        log.info("Initializing filter rules file {}", fileName);
+    private LongHashSet readFingerprints(File storeFile) {
+        RuleStoreReader reader = null;
+        try {
+            reader = new RuleStoreReader(storeFile);
+            LongHashSet fingerprints = new LongHashSet(reader.getCount(RuleType.NETWORK) + reader.getCount(RuleType.CSS));
+            for (RuleType type : RuleType.values()) {
+                if (type == RuleType.COMMENT) {
+                    continue;
+                }
 
-        InputStream inputStream = null;
+                reader.select(type);
+                while (reader.next()) {
+                    fingerprints.add(reader.getFingerprint());
+                }
+            }
+            return fingerprints;
+        } catch (IOException ex) {
+            log.warn("Cannot read previous rules from {}", storeFile, ex);
+            return new LongHashSet();
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Saves the rule diff of the filter
+     *
+     * @param fileName    Filter file name
+     * @param sourceStamp Stamp of the filter file the diff was calculated for
+     * @param diff        Rule diff
+     */
+    private void saveRuleDiff(String fileName, long sourceStamp, RuleDiff diff) {
+        AtomicFile diffFile = new AtomicFile(context.getFileStreamPath(fileName + RULE_DIFF_SUFFIX));
         FileOutputStream outputStream = null;
         try {
-            Resources resources = context.getResources();
+            Properties properties = new Properties();
+            properties.setProperty(DIFF_SOURCE_STAMP_KEY, Long.toString(sourceStamp));
+            properties.setProperty(DIFF_ADDED_KEY, Integer.toString(diff.getAddedCount()));
+            properties.setProperty(DIFF_REMOVED_KEY, Integer.toString(diff.getRemovedCount()));
+            properties.setProperty(DIFF_UNCHANGED_KEY, Integer.toString(diff.getUnchangedCount()));
+            properties.setProperty(DIFF_FINGERPRINT_KEY, Long.toString(diff.getRulesFingerprint()));
+            properties.setProperty(DIFF_COMMENTS_FINGERPRINT_KEY, Long.toString(diff.getCommentsFingerprint()));
+            properties.setProperty(DIFF_TIMESTAMP_KEY, Long.toString(diff.getTimestamp()));
 
-            int id = resources.getIdentifier(fileName, "raw", context.getPackageName());
-            if (id > 0) {
-                context.deleteFile(fileName);
-                outputStream = context.getApplicationContext().openFileOutput(fileName, Context.MODE_PRIVATE);
+            outputStream = diffFile.startWrite();
+            properties.store(outputStream, null);
+            diffFile.finishWrite(outputStream);
+        } catch (IOException ex) {
+            log.warn("Cannot save rule diff of {}", fileName, ex);
+            diffFile.failWrite(outputStream);
+        }
+    }
 
-                log.info("Found default filter rules. Writing to the file.");
-                inputStream = resources.openRawResource(id);
-                IOUtils.copy(inputStream, outputStream);
-            }
-            log.info("Default filter has been initialized");
+    /**
+     * Reads stamp of the filter file the rule store was compiled from
+     *
+     * @param storeFile Rule store file
+     * @return Source stamp or -1 if the rule store cannot be read
+     */
+    private long readSourceStamp(File storeFile) {
+        RuleStoreReader reader = null;
+        try {
+            reader = new RuleStoreReader(storeFile);
+            return reader.getSourceStamp();
+        } catch (IOException ex) {
+            log.warn("Cannot read rule store {}, it will be compiled again", storeFile, ex);
+            return -1;
         } finally {
-            IOUtils.closeQuietly(inputStream);
-            IOUtils.closeQuietly(outputStream);
+            IoUtils.closeQuietly(reader);
         }
     }
 }
@@ -0,0 +1,130 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Data access object for user filter rules and whitelisted domains.
+ * Every rule is stored in a separate row, so that single rules can be added, removed or toggled
+ * without rewriting the whole user filter.
+ */
+public interface UserRuleDao {
+
+    /**
+     * Selects all user rules in the order they have been added
+     *
+     * @return User rules texts
+     */
+    List<String> selectRuleTexts();
+
+    /**
+     * Selects a page of user rules in the order they have been added
+     *
+     * @param offset Number of rules to skip
+     * @param limit  Max number of rules to select
+     * @return User rules texts
+     */
+    List<String> selectRuleTexts(int offset, int limit);
+
+    /**
+     * Selects enabled user rules in the order they have been added
+     *
+     * @return Enabled user rules texts
+     */
+    List<String> selectEnabledRuleTexts();
+
+    /**
+     * Selects disabled user rules
+     *
+     * @return Disabled user rules texts
+     */
+    Set<String> selectDisabledRuleTexts();
+
+    /**
+     * Gets the number of user rules
+     *
+     * @return User rules count
+     */
+    int getRuleCount();
+
+    /**
+     * Adds rule to the user filter. Does nothing if the rule is already there.
+     *
+     * @param ruleText Rule text
+     */
+    void insertRule(String ruleText);
+
+    /**
+     * Adds rules to the user filter in a single transaction. Rules that are already there are skipped.
+     *
+     * @param ruleTexts Rules texts
+     */
+    void insertRules(List<String> ruleTexts);
+
+    /**
+     * Removes rule from the user filter
+     *
+     * @param ruleText Rule text
+     */
+    void removeRule(String ruleText);
+
+    /**
+     * Replaces the text of the rule keeping its position and state.
+     * If the new text is already in the user filter, the old rule is just removed.
+     *
+     * @param oldRuleText Current rule text
+     * @param newRuleText New rule text
+     */
+    void updateRuleText(String oldRuleText, String newRuleText);
+
+    /**
+     * Update enabled state of the rule.
+     * The change is buffered and written later along with the other changes.
+     *
+     * @param ruleText Rule text
+     * @param enabled  true for enabled false for disabled state
+     */
+    void updateRuleEnabled(String ruleText, boolean enabled);
+
+    /**
+     * Update enabled state of the rules in a single transaction
+     *
+     * @param ruleTexts Rules texts
+     * @param enabled   true for enabled false for disabled state
+     */
+    void updateRulesEnabled(Collection<String> ruleTexts, boolean enabled);
+
+    /**
+     * Writes the buffered changes of the rules enabled state
+     */
+    void flushRuleStates();
+
+    /**
+     * Replaces all user rules. Rules which were disabled before stay disabled.
+     *
+     * @param ruleTexts New rules texts
+     */
+    void replaceRules(List<String> ruleTexts);
+
+    /**
+     * Removes all user rules
+     */
+    void clearRules();
+}
@@ -0,0 +1,272 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.adguard.android.contentblocker.commons.concurrent.ExecutorsPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User rule dao implementation (using db).
+ * <p>
+ * Changes of the enabled state are buffered and written in a single transaction,
+ * either after {@link #FLUSH_DELAY_MS} or before the next read or structural change of the table.
+ */
+public class UserRuleDaoImpl implements UserRuleDao {
+    public static final String USER_RULES_TABLE = "user_rules";
+    public static final String WHITELIST_TABLE = "whitelist_rules";
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserRuleDaoImpl.class);
+
+    private static final String USER_RULE_ID = "rule_id";
+    private static final String USER_RULE_TEXT = "rule_text";
+    private static final String USER_RULE_ENABLED = "enabled";
+
+    private static final String[] COLUMNS = {USER_RULE_TEXT};
+
+    private static final long FLUSH_DELAY_MS = 2000;
+
+    private final DbHelper dbHelper;
+    private final String table;
+
+    private final Map<String, Boolean> pendingStates = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    /**
+     * Creates an instance of the dao
+     *
+     * @param dbHelper Database helper
+     * @param table    Table to keep the rules in
+     */
+    public UserRuleDaoImpl(DbHelper dbHelper, String table) {
+        this.dbHelper = dbHelper;
+        this.table = table;
+    }
+
+    @Override
+    public List<String> selectRuleTexts() {
+        return selectRuleTexts(null, null);
+    }
+
+    @Override
+    public List<String> selectRuleTexts(int offset, int limit) {
+        return selectRuleTexts(null, offset + "," + limit);
+    }
+
+    @Override
+    public List<String> selectEnabledRuleTexts() {
+        return selectRuleTexts(USER_RULE_ENABLED + "=1", null);
+    }
+
+    @Override
+    public Set<String> selectDisabledRuleTexts() {
+        return new HashSet<>(selectRuleTexts(USER_RULE_ENABLED + "=0", null));
+    }
+
+    @Override
+    public int getRuleCount() {
+        flushRuleStates();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, table);
+    }
+
+    @Override
+    public void insertRule(String ruleText) {
+        flushRuleStates();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        values.put(USER_RULE_TEXT, ruleText);
+        values.put(USER_RULE_ENABLED, 1);
+        db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    @Override
+    public void insertRules(List<String> ruleTexts) {
+        flushRuleStates();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            db.beginTransaction();
+            insertRules(db, table, ruleTexts, new HashSet<>());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void removeRule(String ruleText) {
+        flushRuleStates();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.delete(table, USER_RULE_TEXT + "=?", new String[]{ruleText});
+    }
+
+    @Override
+    public void updateRuleText(String oldRuleText, String newRuleText) {
+        flushRuleStates();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        values.put(USER_RULE_TEXT, newRuleText);
+        try {
+            db.beginTransaction();
+            int updated = db.updateWithOnConflict(table, values, USER_RULE_TEXT + "=?",
+                    new String[]{oldRuleText}, SQLiteDatabase.CONFLICT_IGNORE);
+            if (updated == 0) {
+                db.delete(table, USER_RULE_TEXT + "=?", new String[]{oldRuleText});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void updateRuleEnabled(String ruleText, boolean enabled) {
+        synchronized (pendingStates) {
+            pendingStates.put(ruleText, enabled);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                ExecutorsPool.getSingleThreadScheduledExecutorService().schedule(this::flushRuleStates, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void updateRulesEnabled(Collection<String> ruleTexts, boolean enabled) {
+        synchronized (pendingStates) {
+            for (String ruleText : ruleTexts) {
+                pendingStates.put(ruleText, enabled);
+            }
+            flushRuleStates();
+        }
+    }
+
+    @Override
+    public void flushRuleStates() {
+        synchronized (pendingStates) {
+            flushScheduled = false;
+            if (pendingStates.isEmpty()) {
+                return;
+            }
+
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            SQLiteStatement statement = db.compileStatement("UPDATE " + table + " SET " + USER_RULE_ENABLED + "=? WHERE " + USER_RULE_TEXT + "=?");
+            try {
+                db.beginTransaction();
+                for (Map.Entry<String, Boolean> entry : pendingStates.entrySet()) {
+                    statement.bindLong(1, entry.getValue() ? 1 : 0);
+                    statement.bindString(2, entry.getKey());
+                    statement.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                statement.close();
+            }
+
+            LOG.debug("{} rule states written to {}", pendingStates.size(), table);
+            pendingStates.clear();
+        }
+    }
+
+    @Override
+    public void replaceRules(List<String> ruleTexts) {
+        Set<String> disabledRules = selectDisabledRuleTexts();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            db.beginTransaction();
+            db.delete(table, null, null);
+            insertRules(db, table, ruleTexts, disabledRules);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void clearRules() {
+        synchronized (pendingStates) {
+            pendingStates.clear();
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.delete(table, null, null);
+    }
+
+    /**
+     * Inserts rules using a single compiled statement.
+     * Must be called inside a transaction.
+     *
+     * @param db            Database
+     * @param table         Table to insert the rules to
+     * @param ruleTexts     Rules texts
+     * @param disabledRules Rules that should be inserted as disabled
+     */
+    static void insertRules(SQLiteDatabase db, String table, List<String> ruleTexts, Set<String> disabledRules) {
+        SQLiteStatement statement = db.compileStatement("INSERT OR IGNORE INTO " + table +
+                " (" + USER_RULE_TEXT + ", " + USER_RULE_ENABLED + ") VALUES (?, ?)");
+        try {
+            for (String ruleText : ruleTexts) {
+                statement.bindString(1, ruleText);
+                statement.bindLong(2, disabledRules.contains(ruleText) ? 0 : 1);
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private List<String> selectRuleTexts(String selection, String limit) {
+        flushRuleStates();
+        List<String> items = new ArrayList<>();
+
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.query(table, COLUMNS, selection, null, null, null, USER_RULE_ID, limit);
+            while (cursor.moveToNext()) {
+                items.add(cursor.getString(0));
+            }
+        } finally {
+            closeCursor(cursor);
+        }
+
+        return items;
+    }
+
+    private void closeCursor(Cursor cursor) {
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+}
@@ -34,6 +34,25 @@ public class FilterList {
     private Date lastTimeDownloaded;
     private int displayOrder;
 
+    public FilterList() {
+    }
+
+    /**
+     * Creates a copy of the specified filter list
+     *
+     * @param other Filter list to copy
+     */
+    public FilterList(FilterList other) {
+        this.filterId = other.filterId;
+        this.name = other.name;
+        this.description = other.description;
+        this.enabled = other.enabled;
+        this.version = other.version;
+        this.timeUpdated = other.timeUpdated;
+        this.lastTimeDownloaded = other.lastTimeDownloaded;
+        this.displayOrder = other.displayOrder;
+    }
+
     /**
      * @return Filter identifier
      */
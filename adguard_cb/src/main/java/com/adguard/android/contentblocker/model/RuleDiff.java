@@ -0,0 +1,111 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.model;
+
+/**
+ * Difference between the filter rules before and after the last update.
+ * Rules are compared by their fingerprints, comments are not taken into account.
+ * Comments are fingerprinted separately, see {@link #getCommentsFingerprint()}.
+ */
+public class RuleDiff {
+
+    private final int addedCount;
+    private final int removedCount;
+    private final int unchangedCount;
+    private final long rulesFingerprint;
+    private final long commentsFingerprint;
+    private final long timestamp;
+
+    /**
+     * Creates an instance of the rule diff
+     *
+     * @param addedCount       Number of the new rules
+     * @param removedCount     Number of the removed rules
+     * @param unchangedCount   Number of the rules which have not changed
+     * @param rulesFingerprint    Fingerprint of the updated rules set
+     * @param commentsFingerprint Fingerprint of the updated comments
+     * @param timestamp           Time of the update
+     */
+    public RuleDiff(int addedCount, int removedCount, int unchangedCount, long rulesFingerprint, long commentsFingerprint, long timestamp) {
+        this.addedCount = addedCount;
+        this.removedCount = removedCount;
+        this.unchangedCount = unchangedCount;
+        this.rulesFingerprint = rulesFingerprint;
+        this.commentsFingerprint = commentsFingerprint;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return Number of the new rules
+     */
+    public int getAddedCount() {
+        return addedCount;
+    }
+
+    /**
+     * @return Number of the removed rules
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    /**
+     * @return Number of the rules which have not changed
+     */
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /**
+     * Order-independent fingerprint of the rules set.
+     * It does not change if the update has changed comments or the order of the rules only.
+     *
+     * @return Fingerprint of the updated rules set
+     */
+    public long getRulesFingerprint() {
+        return rulesFingerprint;
+    }
+
+    /**
+     * Fingerprint of the comments (including the headers) in their order.
+     * It changes if the update has changed comments only.
+     *
+     * @return Fingerprint of the updated comments
+     */
+    public long getCommentsFingerprint() {
+        return commentsFingerprint;
+    }
+
+    /**
+     * @return Time of the update
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return true if the update has not changed any rules
+     */
+    public boolean isEmpty() {
+        return addedCount == 0 && removedCount == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "+" + addedCount + " -" + removedCount + " =" + unchangedCount;
+    }
+}
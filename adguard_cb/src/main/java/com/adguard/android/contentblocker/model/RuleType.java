@@ -0,0 +1,120 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.model;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Type of a filtering rule.
+ * <p>
+ * Rules are classified once when they are compiled (see {@link #classify(String)}),
+ * after that the type is stored along with the rule.
+ */
+public enum RuleType {
+    NETWORK(0, false),
+    WHITELIST(1, false),
+    COMMENT(2, false),
+    CSS(3, true),
+    CSS_INJECT(4, true),
+    SCRIPT(5, true),
+    CONTENT(6, true);
+
+    private static final RuleType[] BY_CODE = new RuleType[values().length];
+
+    static {
+        for (RuleType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+    private final boolean cosmetic;
+
+    RuleType(int code, boolean cosmetic) {
+        this.code = (byte) code;
+        this.cosmetic = cosmetic;
+    }
+
+    /**
+     * @return Stable code of this type used in the compiled rules
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * @return true if rules of this type are CSS, JS or Content rules
+     */
+    public boolean isCosmetic() {
+        return cosmetic;
+    }
+
+    /**
+     * Gets the type by its code
+     *
+     * @param code Type code
+     * @return Rule type or null if there is no type with this code
+     */
+    public static RuleType fromCode(byte code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * Detects type of the rule.
+     * The rule is scanned once, the first cosmetic marker found
+     * (##, #@#, #$#, #@$#, #%#, #@%#, $$, $@$) defines the type.
+     *
+     * @param ruleText Rule text
+     * @return Rule type
+     */
+    public static RuleType classify(String ruleText) {
+        if (StringUtils.isBlank(ruleText)
+                || ruleText.startsWith("!")
+                || ruleText.startsWith("[Adblock")) {
+            return COMMENT;
+        }
+        if (ruleText.startsWith("@@")) {
+            return WHITELIST;
+        }
+
+        int length = ruleText.length();
+        for (int i = 0; i < length - 1; i++) {
+            char c = ruleText.charAt(i);
+            if (c == '#') {
+                // Exception markers have '@' after the first char
+                int next = ruleText.charAt(i + 1) == '@' ? i + 2 : i + 1;
+                if (next >= length) {
+                    break;
+                }
+                char marker = ruleText.charAt(next);
+                if (marker == '#') {
+                    return CSS;
+                }
+                if ((marker == '$' || marker == '%') && next + 1 < length && ruleText.charAt(next + 1) == '#') {
+                    return marker == '$' ? CSS_INJECT : SCRIPT;
+                }
+            } else if (c == '$') {
+                char next = ruleText.charAt(i + 1);
+                if (next == '$' || (next == '@' && i + 2 < length && ruleText.charAt(i + 2) == '$')) {
+                    return CONTENT;
+                }
+            }
+        }
+
+        return NETWORK;
+    }
+}
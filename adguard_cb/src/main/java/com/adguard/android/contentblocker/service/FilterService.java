@@ -24,7 +24,11 @@ import android.net.Uri;
 
 import com.adguard.android.contentblocker.commons.BrowserUtils;
 import com.adguard.android.contentblocker.model.FilterList;
+import com.adguard.android.contentblocker.service.compiler.CompileProfile;
+import com.adguard.android.contentblocker.service.compiler.CompileResult;
 
+import java.io.File;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -58,6 +62,11 @@ public interface FilterService {
      */
     List<FilterList> getFilters();
 
+    /**
+     * @return List of enabled filters
+     */
+    List<FilterList> getEnabledFilters();
+
     /**
      * @return Filter list count
      */
@@ -121,10 +130,45 @@ public interface FilterService {
     List<Integer> getEnabledFilterIds();
 
     /**
-     * Applies new settings and filters
+     * Applies new settings and filters.
+     * Only the default filters file and the files that browsers have already requested are compiled,
+     * filters of the other profiles are compiled when they are requested for the first time.
      */
     void applyNewSettings();
 
+    /**
+     * Compiles filters file of the specified profile only
+     *
+     * @param profile Compile profile of the filters file that is needed right now
+     * @return false if the filters could not be compiled
+     */
+    boolean applyNewSettings(CompileProfile profile);
+
+    /**
+     * Gets information about the currently published filters file of the profile.
+     * It does not wait for the compilation in progress.
+     *
+     * @param profile Compile profile
+     * @return Filters file snapshot or null if the filters have not been compiled yet
+     */
+    CompileResult getFiltersSnapshot(CompileProfile profile);
+
+    /**
+     * Checks if any filters file has ever been compiled.
+     * Until then browsers are served the prebuilt filters.
+     *
+     * @return true if the filters have been compiled at least once
+     */
+    boolean isFiltersCompiled();
+
+    /**
+     * Gets the filters file compiled with the specified profile
+     *
+     * @param profile Compile profile
+     * @return Filters file
+     */
+    File getFiltersFile(CompileProfile profile);
+
     /**
      * @return User filter rules
      */
@@ -135,6 +179,20 @@ public interface FilterService {
      */
     List<String> getUserRulesItems();
 
+    /**
+     * Gets a page of the user rules
+     *
+     * @param offset Number of rules to skip
+     * @param limit  Max number of rules to return
+     * @return User rules items list
+     */
+    List<String> getUserRulesItems(int offset, int limit);
+
+    /**
+     * @return Number of the user rules
+     */
+    int getUserRulesCount();
+
     /**
      * Adds rule to the user filter
      *
@@ -142,6 +200,21 @@ public interface FilterService {
      */
     void addUserRuleItem(String ruleText);
 
+    /**
+     * Removes rule from the user filter
+     *
+     * @param ruleText Item to remove
+     */
+    void removeUserRuleItem(String ruleText);
+
+    /**
+     * Replaces rule of the user filter keeping its position
+     *
+     * @param oldRuleText Item to replace
+     * @param newRuleText New item
+     */
+    void replaceUserRuleItem(String oldRuleText, String newRuleText);
+
     /**
      * Sets user rules
      *
@@ -166,6 +239,14 @@ public interface FilterService {
      */
     void enableUserRule(String ruleText, boolean enabled);
 
+    /**
+     * Enables or disables specified rules at once
+     *
+     * @param ruleTexts Rules to enable or disable
+     * @param enabled   enabled
+     */
+    void enableUserRules(Collection<String> ruleTexts, boolean enabled);
+
     /**
      * @return Whitelist
      */
@@ -176,6 +257,14 @@ public interface FilterService {
      */
     List<String> getWhiteListItems();
 
+    /**
+     * Checks if the domain is in the whitelist, whatever its state is
+     *
+     * @param domain Domain name
+     * @return true if the domain is a whitelist item
+     */
+    boolean containsWhitelistItem(String domain);
+
     /**
      * Adds item to whitelist
      *
@@ -183,6 +272,21 @@ public interface FilterService {
      */
     void addWhitelistItem(String item);
 
+    /**
+     * Removes item from whitelist
+     *
+     * @param item Item to remove
+     */
+    void removeWhitelistItem(String item);
+
+    /**
+     * Replaces whitelist item keeping its position
+     *
+     * @param oldItem Item to replace
+     * @param newItem New item
+     */
+    void replaceWhitelistItem(String oldItem, String newItem);
+
     /**
      * @param whitelist Whitelist value to save
      */
@@ -206,6 +310,14 @@ public interface FilterService {
      */
     void enableWhitelistRule(String ruleText, boolean enabled);
 
+    /**
+     * Enables or disables specified whitelist rules at once
+     *
+     * @param ruleTexts Rules to enable or disable
+     * @param enabled   enabled
+     */
+    void enableWhitelistRules(Collection<String> ruleTexts, boolean enabled);
+
     /**
      * Clears the filters cache and updates filters
      */
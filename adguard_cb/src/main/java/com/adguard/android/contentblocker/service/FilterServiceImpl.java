@@ -29,18 +29,32 @@ import com.adguard.android.contentblocker.commons.BrowserUtils;
 import com.adguard.android.contentblocker.commons.StringHelperUtils;
 import com.adguard.android.contentblocker.commons.TextStatistics;
 import com.adguard.android.contentblocker.commons.concurrent.DispatcherThreadPool;
+import com.adguard.android.contentblocker.commons.concurrent.ExecutorsPool;
 import com.adguard.android.contentblocker.commons.io.IoUtils;
+import com.adguard.android.contentblocker.commons.io.RcsPatch;
 import com.adguard.android.contentblocker.commons.network.NetworkUtils;
+import com.adguard.android.contentblocker.commons.web.DomainTrie;
+import com.adguard.android.contentblocker.commons.web.HttpValidators;
 import com.adguard.android.contentblocker.db.DbHelper;
 import com.adguard.android.contentblocker.db.FilterListDao;
 import com.adguard.android.contentblocker.db.FilterListDaoImpl;
 import com.adguard.android.contentblocker.db.FilterRuleDao;
 import com.adguard.android.contentblocker.db.FilterRuleDaoImpl;
+import com.adguard.android.contentblocker.db.UserRuleDao;
+import com.adguard.android.contentblocker.db.UserRuleDaoImpl;
 import com.adguard.android.contentblocker.model.FilterList;
+import com.adguard.android.contentblocker.model.RuleDiff;
+import com.adguard.android.contentblocker.model.RuleType;
+import com.adguard.android.contentblocker.service.compiler.CompileProfile;
+import com.adguard.android.contentblocker.service.compiler.CompileResult;
+import com.adguard.android.contentblocker.service.compiler.FilterRuleSource;
+import com.adguard.android.contentblocker.service.compiler.FiltersCompiler;
+import com.adguard.android.contentblocker.service.compiler.RuleSource;
+import com.adguard.android.contentblocker.service.compiler.UserRuleSource;
+import com.adguard.android.contentblocker.service.compiler.WhitelistRuleSource;
 import com.adguard.android.contentblocker.ui.utils.ProgressDialogUtils;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang3.StringUtils;
@@ -51,12 +65,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static org.apache.commons.io.ByteOrderMark.UTF_16BE;
 import static org.apache.commons.io.ByteOrderMark.UTF_16LE;
@@ -70,12 +88,9 @@ import static org.apache.commons.io.ByteOrderMark.UTF_8;
 public class FilterServiceImpl implements FilterService {
     private static final Logger LOG = LoggerFactory.getLogger(FilterServiceImpl.class);
 
-    private static final int MIN_RULE_LENGTH = 4;
-    private static final String ASCII_SYMBOL = "\\p{ASCII}+";
-    private static final String COMMENT = "!";
-    private static final String ADBLOCK_META_START = "[Adblock";
-    private static final String MASK_OBSOLETE_SCRIPT_INJECTION = "###adg_start_script_inject";
-    private static final String MASK_OBSOLETE_STYLE_INJECTION = "###adg_start_style_inject";
+    private static final String VERSIONS_VALIDATORS_KEY = "filter_versions";
+    private static final String FILTER_VALIDATORS_KEY_PREFIX = "filter_";
+    private static final String DIFF_PATH_HEADER = "Diff-Path";
 
     private static final int UPDATE_INVALIDATE_PERIOD = 24 * 60 * 60 * 1000; // 24 hours
 
@@ -84,10 +99,15 @@ public class FilterServiceImpl implements FilterService {
     private final Context context;
     private final FilterListDao filterListDao;
     private final FilterRuleDao filterRuleDao;
+    private final UserRuleDao userRuleDao;
+    private final UserRuleDao whitelistDao;
     private final PreferencesService preferencesService;
     private final NotificationService notificationService;
+    private final FiltersCompiler filtersCompiler;
 
     private int cachedFilterRuleCount = 0;
+    // Loaded on the first use, updated along with the whitelist table
+    private DomainTrie whitelistDomains;
 
     /**
      * Creates an instance of AdguardService
@@ -99,6 +119,9 @@ public class FilterServiceImpl implements FilterService {
         this.context = context;
         filterListDao = new FilterListDaoImpl(context, dbHelper);
         filterRuleDao = new FilterRuleDaoImpl(context);
+        userRuleDao = new UserRuleDaoImpl(dbHelper, UserRuleDaoImpl.USER_RULES_TABLE);
+        whitelistDao = new UserRuleDaoImpl(dbHelper, UserRuleDaoImpl.WHITELIST_TABLE);
+        filtersCompiler = new FiltersCompiler(context.getFilesDir());
 
         this.preferencesService = preferencesService;
         this.notificationService = notificationService;
@@ -119,6 +142,11 @@ public class FilterServiceImpl implements FilterService {
         return filterListDao.selectFilterLists();
     }
 
+    @Override
+    public List<FilterList> getEnabledFilters() {
+        return filterListDao.selectEnabledFilterLists();
+    }
+
     @Override
     public int getFilterListCount() {
         return filterListDao.getFilterListCount();
@@ -144,13 +172,9 @@ public class FilterServiceImpl implements FilterService {
 
     @Override
     public void enableContentBlocker(Context context) {
-        Set<String> browsers = BrowserUtils.getKnownBrowsers();
-
-        for (String browser : browsers) {
-            sendUpdateFiltersInBrowser(context, browser);
+        for (CompileProfile profile : CompileProfile.values()) {
+            notifyBrowsers(context, profile);
         }
-
-        sendUpdateFiltersInBrowser(context, null);
     }
 
     @Override
@@ -169,7 +193,6 @@ public class FilterServiceImpl implements FilterService {
 
     @Override
     public void updateFilterEnabled(FilterList filter, boolean enabled) {
-        filter.setEnabled(enabled);
         filterListDao.updateFilterEnabled(filter, enabled);
     }
 
@@ -213,183 +236,292 @@ public class FilterServiceImpl implements FilterService {
 
     @Override
     public String getUserRules() {
-        return preferencesService.getUserRules();
+        return StringUtils.join(getUserRulesItems(), "\n");
     }
 
     @Override
     public List<String> getUserRulesItems() {
-        return StringHelperUtils.splitAndTrim(getUserRules(), "\n");
+        return userRuleDao.selectRuleTexts();
+    }
+
+    @Override
+    public List<String> getUserRulesItems(int offset, int limit) {
+        return userRuleDao.selectRuleTexts(offset, limit);
+    }
+
+    @Override
+    public int getUserRulesCount() {
+        return userRuleDao.getRuleCount();
     }
 
     @Override
     public void addUserRuleItem(String ruleText) {
-        String userRules = getUserRules();
-        if (userRules.isEmpty()) {
-            userRules = ruleText;
-        } else {
-            userRules += "\n" + ruleText;
+        String trimmedRule = StringUtils.trim(ruleText);
+        if (StringUtils.isNotBlank(trimmedRule)) {
+            userRuleDao.insertRule(trimmedRule);
         }
+    }
 
-        setUserRules(userRules);
+    @Override
+    public void removeUserRuleItem(String ruleText) {
+        userRuleDao.removeRule(StringUtils.trim(ruleText));
+    }
+
+    @Override
+    public void replaceUserRuleItem(String oldRuleText, String newRuleText) {
+        String trimmedRule = StringUtils.trim(newRuleText);
+        if (StringUtils.isBlank(trimmedRule)) {
+            removeUserRuleItem(oldRuleText);
+        } else {
+            userRuleDao.updateRuleText(StringUtils.trim(oldRuleText), trimmedRule);
+        }
     }
 
     @Override
     public void setUserRules(String userRules) {
-        preferencesService.setUserRuleItems(userRules);
+        userRuleDao.replaceRules(StringHelperUtils.splitAndTrim(userRules, "\n"));
     }
 
     @Override
     public void clearUserRules() {
-        setUserRules(StringUtils.EMPTY);
-        preferencesService.setDisabledUserRules(new HashSet<>());
+        userRuleDao.clearRules();
     }
 
     @Override
     public Set<String> getDisabledUserRules() {
-        return preferencesService.getDisabledUserRules();
+        return userRuleDao.selectDisabledRuleTexts();
     }
 
     @Override
     public void enableUserRule(String ruleText, boolean enabled) {
-        Set<String> disabledRules = preferencesService.getDisabledUserRules();
-        if (!enabled) {
-            if (disabledRules.add(ruleText)) {
-                preferencesService.setDisabledUserRules(disabledRules);
-            }
-        } else {
-            if (disabledRules.remove(ruleText)) {
-                preferencesService.setDisabledUserRules(disabledRules);
-            }
-        }
+        userRuleDao.updateRuleEnabled(StringUtils.trim(ruleText), enabled);
+    }
+
+    @Override
+    public void enableUserRules(Collection<String> ruleTexts, boolean enabled) {
+        userRuleDao.updateRulesEnabled(ruleTexts, enabled);
     }
 
     @Override
     public String getWhiteList() {
-        return preferencesService.getWhitelist();
+        return StringUtils.join(getWhiteListItems(), "\n");
     }
 
     @Override
     public List<String> getWhiteListItems() {
-        return StringHelperUtils.splitAndTrim(getWhiteList(), "\n");
+        return whitelistDao.selectRuleTexts();
+    }
+
+    @Override
+    public boolean containsWhitelistItem(String domain) {
+        return getWhitelistDomains().contains(domain);
     }
 
     @Override
     public void addWhitelistItem(String item) {
-        String whiteList = getWhiteList();
-        if (StringUtils.isBlank(whiteList)) {
-            whiteList = item;
+        String domain = DomainTrie.normalize(item);
+        if (StringUtils.isNotBlank(domain)) {
+            whitelistDao.insertRule(domain);
+            getWhitelistDomains().add(domain, true);
+        }
+    }
+
+    @Override
+    public void removeWhitelistItem(String item) {
+        String domain = DomainTrie.normalize(item);
+        whitelistDao.removeRule(domain);
+        getWhitelistDomains().remove(domain);
+    }
+
+    @Override
+    public void replaceWhitelistItem(String oldItem, String newItem) {
+        String domain = DomainTrie.normalize(newItem);
+        if (StringUtils.isBlank(domain)) {
+            removeWhitelistItem(oldItem);
         } else {
-            whiteList += "\n" + item;
+            whitelistDao.updateRuleText(DomainTrie.normalize(oldItem), domain);
+            invalidateWhitelistDomains();
         }
-        setWhiteList(whiteList);
     }
 
     @Override
     public void setWhiteList(String whitelist) {
-        preferencesService.setWhitelist(whitelist);
+        whitelistDao.replaceRules(normalizeWhitelistItems(StringHelperUtils.splitAndTrim(whitelist, "\n")));
+        invalidateWhitelistDomains();
     }
 
     @Override
     public void clearWhiteList() {
-        setWhiteList(StringUtils.EMPTY);
-        preferencesService.setDisabledWhitelistRules(new HashSet<>());
+        whitelistDao.clearRules();
+        invalidateWhitelistDomains();
     }
 
     @Override
     public Set<String> getDisabledWhitelistRules() {
-        return preferencesService.getDisabledWhitelistRules();
+        return whitelistDao.selectDisabledRuleTexts();
     }
 
     @Override
     public void enableWhitelistRule(String ruleText, boolean enabled) {
-        Set<String> disabledRules = preferencesService.getDisabledWhitelistRules();
-        if (!enabled) {
-            if (disabledRules.add(ruleText)) {
-                preferencesService.setDisabledWhitelistRules(disabledRules);
-            }
-        } else {
-            if (disabledRules.remove(ruleText)) {
-                preferencesService.setDisabledWhitelistRules(disabledRules);
-            }
-        }
+        String domain = DomainTrie.normalize(ruleText);
+        whitelistDao.updateRuleEnabled(domain, enabled);
+        getWhitelistDomains().setEnabled(domain, enabled);
     }
 
     @Override
-    public void applyNewSettings() {
-        List<String> rules = getAllEnabledRules();
+    public void enableWhitelistRules(Collection<String> ruleTexts, boolean enabled) {
+        List<String> domains = normalizeWhitelistItems(ruleTexts);
+        whitelistDao.updateRulesEnabled(domains, enabled);
+        DomainTrie whitelist = getWhitelistDomains();
+        for (String domain : domains) {
+            whitelist.setEnabled(domain, enabled);
+        }
+    }
 
-        List<String> userRules = StringHelperUtils.splitAndTrim(preferencesService.getUserRules(), "\n");
-        Set<String> disabledUserRules = preferencesService.getDisabledUserRules();
-        for (String userRule : userRules) {
-            if (validateRuleText(userRule) && !disabledUserRules.contains(userRule)) {
-                rules.add(userRule);
+    /**
+     * Normalizes whitelist items before they are saved, see {@link DomainTrie#normalize(String)}
+     *
+     * @param items Whitelist items
+     * @return Normalized items
+     */
+    private static List<String> normalizeWhitelistItems(Collection<String> items) {
+        List<String> domains = new ArrayList<>(items.size());
+        for (String item : items) {
+            domains.add(DomainTrie.normalize(item));
+        }
+        return domains;
+    }
+
+    /**
+     * Gets the whitelisted domains, they are loaded from the whitelist table on the first call
+     *
+     * @return Whitelisted domains
+     */
+    private synchronized DomainTrie getWhitelistDomains() {
+        if (whitelistDomains == null) {
+            DomainTrie domains = new DomainTrie();
+            Set<String> disabledDomains = whitelistDao.selectDisabledRuleTexts();
+            for (String domain : whitelistDao.selectRuleTexts()) {
+                domains.add(domain, !disabledDomains.contains(domain));
             }
+            LOG.info("{} whitelisted domains loaded", domains.size());
+            whitelistDomains = domains;
         }
+        return whitelistDomains;
+    }
 
-        List<String> whitelistRules = StringHelperUtils.splitAndTrim(preferencesService.getWhitelist(), "\n");
-        Set<String> disabledWhitelistRules = preferencesService.getDisabledWhitelistRules();
-        for (String whitelistRule : whitelistRules) {
-            if (!disabledWhitelistRules.contains(whitelistRule)) {
-                rules.add(createWhiteListRule(whitelistRule));
+    private synchronized void invalidateWhitelistDomains() {
+        whitelistDomains = null;
+    }
 
-                /**
-                 * Add these rules, because the Ya Browser does not support the $document modifier
-                 */
-                // TODO Should remove this after the Ya Browser browser add support $document modifier
-                rules.add(String.format("@@http*$domain=%s", whitelistRule));
-                rules.add(String.format("@@||%s^$elemhide", whitelistRule));
+    @Override
+    public void applyNewSettings() {
+        List<FilterList> enabledFilters = getEnabledFilters();
+        for (CompileProfile profile : CompileProfile.values()) {
+            // Filters file of a profile exists once its browser has requested it
+            if (profile == CompileProfile.DEFAULT || getFiltersFile(profile).exists()) {
+                applyNewSettings(profile, enabledFilters);
             }
         }
+    }
 
-        cachedFilterRuleCount = rules.size();
+    @Override
+    public boolean applyNewSettings(CompileProfile profile) {
+        return applyNewSettings(profile, getEnabledFilters());
+    }
 
-        try {
-            LOG.info("Saving {} filters...", cachedFilterRuleCount);
-            FileUtils.writeLines(new File(context.getFilesDir().getAbsolutePath() + "/filters.txt"), rules);
-            preferencesService.setFilterRuleCount(cachedFilterRuleCount);
-            enableContentBlocker(context);
-        } catch (IOException e) {
-            LOG.warn("Unable to save filters to file!!!", e);
-        }
+    @Override
+    public CompileResult getFiltersSnapshot(CompileProfile profile) {
+        return filtersCompiler.getLastResult(getFiltersFile(profile));
     }
 
     @Override
-    public void clearCacheAndUpdateFilters(ProgressDialog progressDialog) {
-        DispatcherThreadPool.getInstance().submit(new ClearFilterCacheTask(progressDialog));
+    public boolean isFiltersCompiled() {
+        return preferencesService.isFiltersCompiled();
     }
 
-    private void sendUpdateFiltersInBrowser(Context context, String packageName) {
-        Intent intent = new Intent();
-        intent.setAction("com.samsung.android.sbrowser.contentBlocker.ACTION_UPDATE");
-        intent.setData(Uri.parse("package:com.adguard.android.contentblocker"));
-        intent.setPackage(packageName);
-        context.sendBroadcast(intent);
+    @Override
+    public File getFiltersFile(CompileProfile profile) {
+        return new File(context.getFilesDir(), profile.getFileName());
+    }
+
+    @Override
+    public void clearCacheAndUpdateFilters(ProgressDialog progressDialog) {
+        DispatcherThreadPool.getInstance().submit(new ClearFilterCacheTask(progressDialog));
     }
 
     /**
-     * Creates whilelist rule from domain name
+     * Compiles filters file of the profile and notifies its browsers if the file has changed.
+     * Whitelist and user rules go first, so that they are not cut off by the profile rule budget.
      *
-     * @param domain Domain name
-     * @return Url filter rule text
+     * @param profile        Compile profile
+     * @param enabledFilters Enabled filters
+     * @return false if the filters could not be compiled
      */
-    private String createWhiteListRule(String domain) {
-        return "@@{0}^$document".replace("{0}", domain);
+    private boolean applyNewSettings(CompileProfile profile, List<FilterList> enabledFilters) {
+        List<RuleSource> sources = new ArrayList<>();
+        sources.add(new WhitelistRuleSource(whitelistDao.selectEnabledRuleTexts(), profile.isDocumentWorkaround()));
+        sources.add(new UserRuleSource(userRuleDao.selectEnabledRuleTexts()));
+        for (FilterList filter : enabledFilters) {
+            sources.add(new FilterRuleSource(filterRuleDao, filter, true, profile.isRuleTypeIncluded(RuleType.COMMENT)));
+        }
+
+        try {
+            LOG.info("Compiling {} filters from {} sources...", profile, sources.size());
+            CompileResult result = filtersCompiler.compile(profile, sources, getFiltersFile(profile));
+            if (!preferencesService.isFiltersCompiled()) {
+                preferencesService.setFiltersCompiled(true);
+            }
+            if (profile == CompileProfile.DEFAULT) {
+                cachedFilterRuleCount = result.getRuleCount();
+            }
+            if (!result.isChanged()) {
+                LOG.info("{} filters have not changed, browsers are not notified", profile);
+                return true;
+            }
+
+            LOG.info("Saved {} {} filters", result.getRuleCount(), profile);
+            if (profile == CompileProfile.DEFAULT) {
+                preferencesService.setFilterRuleCount(cachedFilterRuleCount);
+            }
+            notifyBrowsers(context, profile);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Unable to save {} filters to file!!!", profile, e);
+            return false;
+        }
     }
 
     /**
-     * Checks the rules of non ascii symbols and control symbols
+     * Notifies browsers using the profile that its filters file has been updated.
+     * Known browsers without a profile of their own and the browsers listening
+     * to the broadcast without a package use the default profile.
      *
-     * @param userRule rule
-     * @return true if correct rule or false
+     * @param context Context
+     * @param profile Compile profile
      */
-    private boolean validateRuleText(String userRule) {
-        return StringUtils.isNotBlank(userRule) &&
-                userRule.matches(ASCII_SYMBOL) &&
-                StringUtils.length(userRule) > MIN_RULE_LENGTH &&
-                !StringUtils.startsWith(userRule, COMMENT) &&
-                !StringUtils.startsWith(userRule, ADBLOCK_META_START) &&
-                !StringUtils.contains(userRule, MASK_OBSOLETE_SCRIPT_INJECTION) &&
-                !StringUtils.contains(userRule, MASK_OBSOLETE_STYLE_INJECTION);
+    private void notifyBrowsers(Context context, CompileProfile profile) {
+        if (profile != CompileProfile.DEFAULT) {
+            for (String browser : profile.getPackages()) {
+                sendUpdateFiltersInBrowser(context, browser);
+            }
+            return;
+        }
+
+        for (String browser : BrowserUtils.getKnownBrowsers()) {
+            if (CompileProfile.forPackage(browser) == CompileProfile.DEFAULT) {
+                sendUpdateFiltersInBrowser(context, browser);
+            }
+        }
+        sendUpdateFiltersInBrowser(context, null);
+    }
+
+    private void sendUpdateFiltersInBrowser(Context context, String packageName) {
+        Intent intent = new Intent();
+        intent.setAction("com.samsung.android.sbrowser.contentBlocker.ACTION_UPDATE");
+        intent.setData(Uri.parse("package:com.adguard.android.contentblocker"));
+        intent.setPackage(packageName);
+        context.sendBroadcast(intent);
     }
 
     /**
@@ -436,7 +568,8 @@ public class FilterServiceImpl implements FilterService {
         preferencesService.setLastUpdateCheck(new Date().getTime());
 
         try {
-            final List<FilterList> updated = ServiceApiClient.downloadFilterVersions(filters);
+            final HttpValidators versionsValidators = getVersionsValidators(filters);
+            final List<FilterList> updated = ServiceApiClient.downloadFilterVersions(filters, versionsValidators);
             if (updated == null) {
                 LOG.warn("Cannot download filter updates.");
                 return null;
@@ -447,40 +580,63 @@ public class FilterServiceImpl implements FilterService {
                 map.put(filter.getFilterId(), filter);
             }
 
+            // Metadata of all the checked filters is saved at once when the check succeeds
+            List<FilterList> checkedFilters = new ArrayList<>();
+            List<FilterList> outdatedFilters = new ArrayList<>();
             for (FilterList current : filters) {
                 final int filterId = current.getFilterId();
                 if (!map.containsKey(filterId)) {
-                    current.setLastTimeDownloaded(new Date());
-                    updateFilter(current);
+                    FilterList checked = new FilterList(current);
+                    checked.setLastTimeDownloaded(new Date());
+                    checkedFilters.add(checked);
                     continue;
                 }
 
                 FilterList update = map.get(filterId);
                 if (update.getVersion().compareTo(current.getVersion()) > 0
                         || !filterRuleDao.hasFilterRules(filterId)) {
-
-                    current.setVersion(update.getVersion().toString());
-                    current.setLastTimeDownloaded(new Date());
-                    current.setTimeUpdated(update.getTimeUpdated());
-                    map.put(filterId, current);
-
-                    LOG.info("Updating filter:" + current.getFilterId());
-                    updateFilter(current);
-
-                    LOG.info("Updating rules for filter:" + current.getFilterId());
-                    updateFilterRules(filterId);
+                    outdatedFilters.add(current);
                 } else {
                     map.remove(filterId);
-                    current.setLastTimeDownloaded(new Date());
-                    updateFilter(current);
+                    FilterList checked = new FilterList(current);
+                    checked.setLastTimeDownloaded(new Date());
+                    checkedFilters.add(checked);
                 }
             }
 
+            Set<Integer> failedFilterIds = updateFilterRules(outdatedFilters);
+            for (FilterList current : outdatedFilters) {
+                final int filterId = current.getFilterId();
+                if (failedFilterIds.contains(filterId)) {
+                    // Metadata is not updated so that the filter will be downloaded next time
+                    map.remove(filterId);
+                    continue;
+                }
+
+                FilterList update = map.get(filterId);
+                FilterList checked = new FilterList(current);
+                checked.setVersion(update.getVersion().toString());
+                checked.setLastTimeDownloaded(new Date());
+                checked.setTimeUpdated(update.getTimeUpdated());
+                map.put(filterId, checked);
+
+                LOG.info("Updating filter:" + filterId);
+                checkedFilters.add(checked);
+            }
+            logRuleDiffs(outdatedFilters, failedFilterIds);
+
+            if (!checkedFilters.isEmpty()) {
+                filterListDao.updateFilters(checkedFilters);
+            }
+            saveVersionsValidators(filters, failedFilterIds, versionsValidators);
             LOG.info("Finished checking filters updates.");
 
             return new ArrayList<>(map.values());
         } catch (IOException e) {
             LOG.error("Error checking filter updates:\r\n", e);
+        } catch (InterruptedException e) {
+            LOG.warn("Checking filter updates has been interrupted");
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             LOG.error("Error parsing server response:\r\n", e);
         }
@@ -488,28 +644,160 @@ public class FilterServiceImpl implements FilterService {
         return null;
     }
 
-    private List<FilterList> getEnabledFilters() {
-        List<FilterList> enabledFilters = new ArrayList<>();
+    /**
+     * Downloads rules of the filters in parallel.
+     * Rules of every filter are committed independently, so a failed download
+     * does not affect the other filters.
+     *
+     * @param filters Filters to update
+     * @return Ids of the filters which rules could not be updated
+     * @throws InterruptedException if the thread is interrupted, the downloads that are not finished yet are cancelled
+     */
+    private Set<Integer> updateFilterRules(List<FilterList> filters) throws InterruptedException {
+        Set<Integer> failedFilterIds = new HashSet<>();
+        if (filters.isEmpty()) {
+            return failedFilterIds;
+        }
 
-        List<FilterList> filters = getFilters();
+        ExecutorService executor = ExecutorsPool.getDownloadExecutorService();
+        List<Future<Void>> futures = new ArrayList<>(filters.size());
         for (FilterList filter : filters) {
-            if (filter.isEnabled()) {
-                enabledFilters.add(filter);
+            final int filterId = filter.getFilterId();
+            futures.add(executor.submit(() -> {
+                LOG.info("Updating rules for filter:" + filterId);
+                updateFilterRules(filterId);
+                return null;
+            }));
+        }
+
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                int filterId = filters.get(i).getFilterId();
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    LOG.error("Error updating rules for filter {}:\r\n", filterId, ex.getCause());
+                    failedFilterIds.add(filterId);
+                }
             }
+        } catch (InterruptedException ex) {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            throw ex;
         }
 
-        LOG.info("Found {} enabled filters", enabledFilters.size());
+        return failedFilterIds;
+    }
+
+    /**
+     * Logs how many rules the update has added and removed
+     *
+     * @param filters         Updated filters
+     * @param failedFilterIds Ids of the filters which rules could not be updated
+     */
+    private void logRuleDiffs(List<FilterList> filters, Set<Integer> failedFilterIds) {
+        int addedCount = 0;
+        int removedCount = 0;
+        for (FilterList filter : filters) {
+            if (failedFilterIds.contains(filter.getFilterId())) {
+                continue;
+            }
 
-        return enabledFilters;
+            RuleDiff diff = filterRuleDao.getRuleDiff(filter.getFilterId());
+            if (diff != null) {
+                LOG.info("Filter {} rules diff: {}", filter.getFilterId(), diff);
+                addedCount += diff.getAddedCount();
+                removedCount += diff.getRemovedCount();
+            }
+        }
+        LOG.info("Updated {} filters, {} rules added, {} rules removed", filters.size() - failedFilterIds.size(), addedCount, removedCount);
     }
 
     private void updateFilterRules(int filterId) throws IOException {
-        final List<String> rules = ServiceApiClient.downloadFilterRules(filterId);
-        filterRuleDao.setFilterRules(filterId, rules);
+        if (filterRuleDao.hasFilterRules(filterId) && patchFilterRules(filterId)) {
+            LOG.info("Filter {} has been updated with a patch", filterId);
+            // Local rules differ from the last full download now
+            preferencesService.removeHttpValidators(FILTER_VALIDATORS_KEY_PREFIX + filterId);
+            return;
+        }
+
+        String validatorsKey = FILTER_VALIDATORS_KEY_PREFIX + filterId;
+        // Conditional request makes sense only if we have the rules of the previous download
+        HttpValidators validators = filterRuleDao.hasFilterRules(filterId)
+                ? preferencesService.getHttpValidators(validatorsKey)
+                : new HttpValidators();
+
+        filterRuleDao.setFilterRules(filterId, consumer -> ServiceApiClient.downloadFilterRules(filterId, validators, consumer));
+        preferencesService.setHttpValidators(validatorsKey, validators);
     }
 
-    private void updateFilter(FilterList current) {
-        filterListDao.updateFilter(current);
+    /**
+     * Tries to update the local filter rules with a patch instead of downloading the whole filter.
+     *
+     * @param filterId Filter id
+     * @return true if the filter has been updated, false if the full download is required
+     */
+    private boolean patchFilterRules(int filterId) {
+        String diffPath = filterRuleDao.getFilterHeader(filterId, DIFF_PATH_HEADER);
+        if (diffPath == null) {
+            return false;
+        }
+
+        try {
+            String patchText = ServiceApiClient.downloadFilterPatch(filterId, diffPath);
+            if (patchText == null) {
+                return false;
+            }
+
+            RcsPatch patch = RcsPatch.parse(patchText);
+            return !patch.isEmpty() && filterRuleDao.applyPatch(filterId, patch);
+        } catch (IOException ex) {
+            LOG.warn("Cannot patch filter {}, downloading it completely", filterId, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Gets validators for the filter versions request.
+     * "Not modified" response means nothing only for the filters which versions were already
+     * compared with the cached response, so for the other filters we make an unconditional request.
+     *
+     * @param filters Filters to check
+     * @return Validators to send
+     */
+    private HttpValidators getVersionsValidators(List<FilterList> filters) {
+        Set<String> checkedFilters = preferencesService.getVersionsCheckedFilters();
+        for (FilterList filter : filters) {
+            if (!checkedFilters.contains(Integer.toString(filter.getFilterId()))) {
+                return new HttpValidators();
+            }
+        }
+        return preferencesService.getHttpValidators(VERSIONS_VALIDATORS_KEY);
+    }
+
+    /**
+     * Saves validators of the filter versions response after all the filters were processed
+     *
+     * @param filters         Filters that were checked
+     * @param failedFilterIds Filters which rules could not be updated. They must be checked again next time.
+     * @param validators      Validators of the response
+     */
+    private void saveVersionsValidators(List<FilterList> filters, Set<Integer> failedFilterIds, HttpValidators validators) {
+        Set<String> checkedFilters = validators.isNotModified()
+                ? preferencesService.getVersionsCheckedFilters()
+                : new HashSet<>();
+        for (FilterList filter : filters) {
+            String filterId = Integer.toString(filter.getFilterId());
+            if (failedFilterIds.contains(filter.getFilterId())) {
+                checkedFilters.remove(filterId);
+            } else {
+                checkedFilters.add(filterId);
+            }
+        }
+
+        preferencesService.setHttpValidators(VERSIONS_VALIDATORS_KEY, validators);
+        preferencesService.setVersionsCheckedFilters(checkedFilters);
     }
 
     private boolean shouldUpdateOutdatedFilter(FilterList filterList, long timeFromUpdate) {
@@ -619,12 +907,11 @@ public class FilterServiceImpl implements FilterService {
                 return;
             }
 
-            String newRules = StringUtils.join(rulesList, "\n");
-            if (!overwrite) {
-                newRules = preferencesService.getUserRules() + "\n" + newRules;
+            if (overwrite) {
+                userRuleDao.replaceRules(rulesList);
+            } else {
+                userRuleDao.insertRules(rulesList);
             }
-
-            preferencesService.setUserRuleItems(newRules);
             LOG.info("User rules added successfully.");
 
             applyNewSettings();
@@ -705,13 +992,9 @@ public class FilterServiceImpl implements FilterService {
 
         @Override
         protected void processTask() {
-            String[] fileList = context.fileList();
-
-            for (String file : fileList) {
-                if (StringUtils.startsWith(file, "filter_")) {
-                    context.deleteFile(file);
-                }
-            }
+            filterRuleDao.clearFilterRules();
+            filtersCompiler.clear();
+            preferencesService.clearHttpValidators();
 
             checkFilterUpdates(true);
             applyNewSettings();
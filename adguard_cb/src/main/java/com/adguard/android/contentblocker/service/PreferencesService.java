@@ -16,6 +16,8 @@
  */
 package com.adguard.android.contentblocker.service;
 
+import com.adguard.android.contentblocker.commons.web.HttpValidators;
+
 import java.util.Date;
 import java.util.Set;
 
@@ -30,6 +32,7 @@ public interface PreferencesService {
     String KEY_LAST_IMPORT_URL = "key_last_import_rule";
     String KEY_FILTER_RULE_COUNT = "key_filter_rule_count";
     String KEY_ONBOARDING_SHOWN = "key_onboarding_shown";
+    String KEY_FILTERS_COMPILED = "key_filters_compiled";
     String KEY_USER_RULES_STRING = "key_user_rules_string";
     String KEY_DISABLED_USER_RULES = "key_disabled_user_rules";
     String KEY_WHITELIST_STRING = "key_whitelist_string";
@@ -37,6 +40,9 @@ public interface PreferencesService {
     String KEY_INSTALLATION_TIME = "key_installation_time";
     String KEY_APP_RATED = "key_app_rated";
     String KEY_RATE_APP_DIALOG_COUNT = "key_rate_app_dialog_count";
+    String KEY_HTTP_ETAG_PREFIX = "key_http_etag_";
+    String KEY_HTTP_LAST_MODIFIED_PREFIX = "key_http_last_modified_";
+    String KEY_VERSIONS_CHECKED_FILTERS = "key_versions_checked_filters";
 
     /**
      * @return true if filters autoupdate is enabled
@@ -70,48 +76,6 @@ public interface PreferencesService {
      */
     void setOnboardingShown(boolean value);
 
-    /**
-     * @return Whitelisted domains
-     */
-    String getWhitelist();
-
-    /**
-     * @param whitelist Whitelist contents
-     */
-    void setWhitelist(String whitelist);
-
-    /**
-     * @return Set with disabled whitelist rules
-     */
-    Set<String> getDisabledWhitelistRules();
-
-    /**
-     * @param disabledWhitelistRules Set with disabled whitelist rules
-     */
-    void setDisabledWhitelistRules(Set<String> disabledWhitelistRules);
-
-    /**
-     * @return User filter rules
-     */
-    String getUserRules();
-
-    /**
-     * Set user filter text
-     *
-     * @param userRules user rules
-     */
-    void setUserRuleItems(String userRules);
-
-    /**
-     * @return Set with disabled user rules
-     */
-    Set<String> getDisabledUserRules();
-
-    /**
-     * @param disabledUserRules Set with disabled user rules
-     */
-    void setDisabledUserRules(Set<String> disabledUserRules);
-
     /**
      * @param time Last time updates where checked
      */
@@ -148,6 +112,18 @@ public interface PreferencesService {
      */
     int getFilterRuleCount();
 
+    /**
+     * @return True if the filters have been compiled at least once
+     */
+    boolean isFiltersCompiled();
+
+    /**
+     * Save the flag determining that the filters have been compiled
+     *
+     * @param value True if compiled
+     */
+    void setFiltersCompiled(boolean value);
+
     /**
      * @return Installation time
      */
@@ -177,4 +153,42 @@ public interface PreferencesService {
      * Increases count of 'Rate app' dialog shows
      */
     void increaseRateAppDialogCount();
+
+    /**
+     * Gets HTTP validators of the last successful download
+     *
+     * @param key Download key
+     * @return Validators (empty if there are no validators saved)
+     */
+    HttpValidators getHttpValidators(String key);
+
+    /**
+     * Saves HTTP validators of the successful download
+     *
+     * @param key        Download key
+     * @param validators Validators to save
+     */
+    void setHttpValidators(String key, HttpValidators validators);
+
+    /**
+     * Removes HTTP validators of the download
+     *
+     * @param key Download key
+     */
+    void removeHttpValidators(String key);
+
+    /**
+     * Removes all saved HTTP validators
+     */
+    void clearHttpValidators();
+
+    /**
+     * @return Ids of the filters which versions were checked against the saved filter versions validators
+     */
+    Set<String> getVersionsCheckedFilters();
+
+    /**
+     * @param filterIds Ids of the filters which versions were checked against the saved filter versions validators
+     */
+    void setVersionsCheckedFilters(Set<String> filterIds);
 }
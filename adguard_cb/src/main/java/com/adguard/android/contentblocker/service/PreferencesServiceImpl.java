@@ -21,7 +21,8 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
-import org.apache.commons.lang3.StringUtils;
+import com.adguard.android.contentblocker.commons.web.HttpValidators;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,31 +90,6 @@ public class PreferencesServiceImpl implements PreferencesService {
         editor.apply();
     }
 
-    @Override
-    public String getUserRules() {
-        return sharedPreferences.getString(KEY_USER_RULES_STRING, StringUtils.EMPTY);
-    }
-
-    @Override
-    public void setUserRuleItems(String userRules) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(KEY_USER_RULES_STRING, userRules);
-        editor.apply();
-    }
-
-    @Override
-    public Set<String> getDisabledUserRules() {
-        Set<String> valueSet = sharedPreferences.getStringSet(KEY_DISABLED_USER_RULES, null);
-        return valueSet != null ? new HashSet<>(valueSet) : new HashSet<>();
-    }
-
-    @Override
-    public void setDisabledUserRules(Set<String> disabledUserRules) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putStringSet(KEY_DISABLED_USER_RULES, disabledUserRules);
-        editor.apply();
-    }
-
     @Override
     public void setLastUpdateCheck(long time) {
         SharedPreferences.Editor editor = sharedPreferences.edit();
@@ -151,6 +127,18 @@ public class PreferencesServiceImpl implements PreferencesService {
         return sharedPreferences.getInt(KEY_FILTER_RULE_COUNT, 0);
     }
 
+    @Override
+    public boolean isFiltersCompiled() {
+        return sharedPreferences.getBoolean(KEY_FILTERS_COMPILED, false);
+    }
+
+    @Override
+    public void setFiltersCompiled(boolean value) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean(KEY_FILTERS_COMPILED, value);
+        editor.apply();
+    }
+
     @Override
     public Long getInstallationTime() {
         return sharedPreferences.getLong(KEY_INSTALLATION_TIME, 0L);
@@ -188,26 +176,50 @@ public class PreferencesServiceImpl implements PreferencesService {
     }
 
     @Override
-    public String getWhitelist() {
-        return sharedPreferences.getString(KEY_WHITELIST_STRING, null);
+    public HttpValidators getHttpValidators(String key) {
+        return new HttpValidators(
+                sharedPreferences.getString(KEY_HTTP_ETAG_PREFIX + key, null),
+                sharedPreferences.getString(KEY_HTTP_LAST_MODIFIED_PREFIX + key, null));
+    }
+
+    @Override
+    public void setHttpValidators(String key, HttpValidators validators) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(KEY_HTTP_ETAG_PREFIX + key, validators.getEtag());
+        editor.putString(KEY_HTTP_LAST_MODIFIED_PREFIX + key, validators.getLastModified());
+        editor.apply();
+    }
+
+    @Override
+    public void removeHttpValidators(String key) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.remove(KEY_HTTP_ETAG_PREFIX + key);
+        editor.remove(KEY_HTTP_LAST_MODIFIED_PREFIX + key);
+        editor.apply();
     }
 
     @Override
-    public void setWhitelist(String whitelist) {
+    public void clearHttpValidators() {
         SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(KEY_WHITELIST_STRING, whitelist);
+        for (String key : sharedPreferences.getAll().keySet()) {
+            if (key.startsWith(KEY_HTTP_ETAG_PREFIX) || key.startsWith(KEY_HTTP_LAST_MODIFIED_PREFIX)) {
+                editor.remove(key);
+            }
+        }
+        editor.remove(KEY_VERSIONS_CHECKED_FILTERS);
         editor.apply();
     }
 
     @Override
-    public Set<String> getDisabledWhitelistRules() {
-        return sharedPreferences.getStringSet(KEY_DISABLED_WHITELIST, new HashSet<>());
+    public Set<String> getVersionsCheckedFilters() {
+        Set<String> valueSet = sharedPreferences.getStringSet(KEY_VERSIONS_CHECKED_FILTERS, null);
+        return valueSet != null ? new HashSet<>(valueSet) : new HashSet<>();
     }
 
     @Override
-    public void setDisabledWhitelistRules(Set<String> disabledWhitelistRules) {
+    public void setVersionsCheckedFilters(Set<String> filterIds) {
         SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putStringSet(KEY_DISABLED_WHITELIST, disabledWhitelistRules);
+        editor.putStringSet(KEY_VERSIONS_CHECKED_FILTERS, filterIds);
         editor.apply();
     }
 }
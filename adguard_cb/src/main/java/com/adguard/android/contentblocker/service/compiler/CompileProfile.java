@@ -0,0 +1,125 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.BrowserUtils;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <pre>
+ * Compilation profile of a filters file consumer.
+ *
+ * Every profile has its own output file and contains only the rules its consumer can apply,
+ * so that browsers do not have to parse the rules they don't support.
+ * If the number of rules exceeds the profile budget, the rest are dropped.
+ * Exception rules of all the sources are written first, then the other rules source by source.
+ * Whitelist and user rules are compiled first, so they are never dropped in favor of the filters rules.</pre>
+ */
+public enum CompileProfile {
+
+    /**
+     * Profile of unknown consumers, contains all the rules
+     */
+    DEFAULT("filters.txt", EnumSet.allOf(RuleType.class), Integer.MAX_VALUE, true,
+            Collections.<String>emptyList()),
+
+    /**
+     * Samsung Internet applies URL blocking and element hiding rules only
+     */
+    SAMSUNG("filters_samsung.txt", EnumSet.of(RuleType.NETWORK, RuleType.WHITELIST, RuleType.CSS), 150000, false,
+            BrowserUtils.getSamsungBrowserPackages()),
+
+    /**
+     * Yandex browser applies URL blocking and element hiding rules only.
+     * It does not support $document modifier, so whitelist is compiled with the workaround rules.
+     */
+    YANDEX("filters_yandex.txt", EnumSet.of(RuleType.NETWORK, RuleType.WHITELIST, RuleType.CSS), 150000, true,
+            BrowserUtils.getYandexBrowserPackages());
+
+    private final String fileName;
+    private final Set<RuleType> ruleTypes;
+    private final int ruleBudget;
+    private final boolean documentWorkaround;
+    private final List<String> packages;
+
+    CompileProfile(String fileName, Set<RuleType> ruleTypes, int ruleBudget, boolean documentWorkaround, List<String> packages) {
+        this.fileName = fileName;
+        this.ruleTypes = ruleTypes;
+        this.ruleBudget = ruleBudget;
+        this.documentWorkaround = documentWorkaround;
+        this.packages = packages;
+    }
+
+    /**
+     * @return Name of the output file
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @param ruleType Rule type
+     * @return true if the consumer supports rules of this type
+     */
+    public boolean isRuleTypeIncluded(RuleType ruleType) {
+        return ruleTypes.contains(ruleType);
+    }
+
+    /**
+     * @return Maximum number of rules in the output file
+     */
+    public int getRuleBudget() {
+        return ruleBudget;
+    }
+
+    /**
+     * @return true if whitelisted domains must be duplicated with the rules
+     * that work without $document modifier support
+     */
+    public boolean isDocumentWorkaround() {
+        return documentWorkaround;
+    }
+
+    /**
+     * @return Packages of the consumers using this profile
+     */
+    public List<String> getPackages() {
+        return packages;
+    }
+
+    /**
+     * Gets the profile of the consumer
+     *
+     * @param packageName Package name of the consumer or null if it is unknown
+     * @return Compile profile
+     */
+    public static CompileProfile forPackage(String packageName) {
+        if (packageName != null) {
+            for (CompileProfile profile : values()) {
+                if (profile.packages.contains(packageName)) {
+                    return profile;
+                }
+            }
+        }
+        return DEFAULT;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+/**
+ * Result of the filters file compilation.
+ * Describes the published snapshot of the filters file.
+ */
+public class CompileResult {
+
+    private final int ruleCount;
+    private final long version;
+    private final String checksum;
+    private final long timestamp;
+    private final boolean changed;
+
+    /**
+     * Creates an instance of the compilation result
+     *
+     * @param ruleCount Number of rules in the filters file
+     * @param version   Snapshot version of the filters file
+     * @param checksum  Checksum of the filters file content
+     * @param timestamp Time when the snapshot was published
+     * @param changed   True if the filters file content has changed
+     */
+    CompileResult(int ruleCount, long version, String checksum, long timestamp, boolean changed) {
+        this.ruleCount = ruleCount;
+        this.version = version;
+        this.checksum = checksum;
+        this.timestamp = timestamp;
+        this.changed = changed;
+    }
+
+    /**
+     * Creates a copy of the compilation result
+     *
+     * @param result  Compilation result
+     * @param changed True if the filters file content has changed
+     */
+    CompileResult(CompileResult result, boolean changed) {
+        this(result.ruleCount, result.version, result.checksum, result.timestamp, changed);
+    }
+
+    /**
+     * @return Number of rules in the filters file
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @return Snapshot version of the filters file. It is incremented every time the file is replaced.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Hex-encoded MD5 checksum of the filters file content
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return Time when the snapshot was published (in milliseconds)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return True if the filters file content has changed and browsers should reload it
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+}
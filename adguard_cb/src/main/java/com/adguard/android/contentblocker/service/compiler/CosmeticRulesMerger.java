@@ -0,0 +1,319 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.HashUtils;
+import com.adguard.android.contentblocker.commons.LongHashSet;
+import com.adguard.android.contentblocker.commons.LongLongHashMap;
+import com.adguard.android.contentblocker.commons.io.IoUtils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <pre>
+ * Merges element hiding rules with the same selector.
+ *
+ * example.com##.ad and other.com##.ad are written as a single example.com,other.com##.ad rule.
+ * Domain-specific rules are dropped if there is a generic ##.ad rule, except for the websites
+ * where generic rules are disabled with a $generichide exception (@@||example.com^$generichide).
+ * Rules with excluded domains (~example.com##.ad) and element hiding exceptions are not merged.
+ *
+ * Selectors are kept in memory as 64-bit fingerprints only. Domains of the rules are spilled
+ * to a file, records of the same selector are chained, so that all of them are read
+ * when the first rule of the selector is written.</pre>
+ */
+class CosmeticRulesMerger implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    private static final String MARKER = "##";
+    private static final String EXCEPTION_PREFIX = "@@||";
+    private static final char OPTIONS_DELIMITER = '$';
+    private static final String OPTION_GENERICHIDE = "generichide";
+    private static final char DOMAINS_DELIMITER = ',';
+    // Merged rules are split, so that a single line does not get too long
+    private static final int MAX_MERGED_DOMAINS = 100;
+    private static final long NO_RECORD = -1;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final File spillFile;
+    // Offset of the last spilled record of the selector
+    private final LongLongHashMap lastRecords = new LongLongHashMap();
+    private final LongHashSet genericSelectors = new LongHashSet();
+    private final LongHashSet mergedSelectors = new LongHashSet();
+    private final LongHashSet addedRules = new LongHashSet();
+    // Fingerprints of the domains where generic rules are disabled
+    private final LongHashSet generichideDomains = new LongHashSet();
+    private DataOutputStream spillOutput;
+    private long spillSize;
+    private RandomAccessFile spillInput;
+    private ByteBuffer spillBuffer;
+    private long savedBytes;
+
+    /**
+     * Creates an instance of the merger
+     *
+     * @param spillFile File to keep the domains of the rules in. It is deleted when the merger is closed.
+     */
+    CosmeticRulesMerger(File spillFile) {
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Adds the rule to the merger.
+     * Rules should be added before merging any of them.
+     *
+     * @param rule     Element hiding rule text
+     * @param canCover false if the rule might not get to the output, so a generic rule can't replace the domain-specific ones
+     * @throws IOException if the domains cannot be spilled
+     */
+    void addRule(String rule, boolean canCover) throws IOException {
+        int markerIndex = getMarkerIndex(rule);
+        if (markerIndex < 0) {
+            return;
+        }
+
+        long selector = HashUtils.fingerprint(rule, markerIndex + MARKER.length(), rule.length());
+        if (markerIndex == 0) {
+            if (canCover) {
+                genericSelectors.add(selector);
+            }
+        } else {
+            lastRecords.put(selector, spill(lastRecords.get(selector, NO_RECORD), rule.substring(0, markerIndex)));
+        }
+        addedRules.add(HashUtils.fingerprint(rule));
+    }
+
+    /**
+     * Adds the exception rule to the merger, only $generichide exceptions are taken into account.
+     * Exceptions should be added before merging any rule.
+     *
+     * @param rule Exception rule text
+     */
+    void addException(String rule) {
+        if (!rule.startsWith(EXCEPTION_PREFIX)) {
+            return;
+        }
+
+        int optionsIndex = rule.lastIndexOf(OPTIONS_DELIMITER);
+        if (optionsIndex < 0) {
+            return;
+        }
+        for (String option : StringUtils.split(rule.substring(optionsIndex + 1), ',')) {
+            if (OPTION_GENERICHIDE.equalsIgnoreCase(option.trim())) {
+                int domainEnd = EXCEPTION_PREFIX.length();
+                while (domainEnd < optionsIndex && isDomainChar(rule.charAt(domainEnd))) {
+                    domainEnd++;
+                }
+                if (domainEnd > EXCEPTION_PREFIX.length()) {
+                    String domain = rule.substring(EXCEPTION_PREFIX.length(), domainEnd).toLowerCase();
+                    generichideDomains.add(HashUtils.fingerprint(domain));
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Merges the rule with the other rules having the same selector.
+     * All the domains of the selector are written at the place of its first rule.
+     *
+     * @param rule Element hiding rule text
+     * @return Rules to write instead of this rule, empty if it has been merged already
+     * @throws IOException if the spilled domains cannot be read
+     */
+    List<String> merge(String rule) throws IOException {
+        int markerIndex = getMarkerIndex(rule);
+        if (markerIndex <= 0 || !addedRules.contains(HashUtils.fingerprint(rule))) {
+            return Collections.singletonList(rule);
+        }
+
+        long selector = HashUtils.fingerprint(rule, markerIndex + MARKER.length(), rule.length());
+        boolean generic = genericSelectors.contains(selector);
+        if ((generic && generichideDomains.size() == 0) || !mergedSelectors.add(selector)) {
+            savedBytes += getLineBytes(rule);
+            return Collections.emptyList();
+        }
+
+        String selectorPart = rule.substring(markerIndex);
+        List<String> domains = new ArrayList<>(readDomains(lastRecords.get(selector, NO_RECORD)));
+        if (generic) {
+            // Generic rule does not apply to the websites with $generichide exceptions
+            for (Iterator<String> iterator = domains.iterator(); iterator.hasNext(); ) {
+                if (!isGenerichide(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        List<String> rules = new ArrayList<>();
+        for (int i = 0; i < domains.size(); i += MAX_MERGED_DOMAINS) {
+            List<String> chunk = domains.subList(i, Math.min(i + MAX_MERGED_DOMAINS, domains.size()));
+            String merged = StringUtils.join(chunk, DOMAINS_DELIMITER) + selectorPart;
+            savedBytes -= getLineBytes(merged);
+            rules.add(merged);
+        }
+        savedBytes += getLineBytes(rule);
+        return rules;
+    }
+
+    /**
+     * @return Number of bytes the merged rules are shorter than the original ones
+     */
+    long getSavedBytes() {
+        return savedBytes;
+    }
+
+    @Override
+    public void close() {
+        IoUtils.closeQuietly(spillOutput);
+        IoUtils.closeQuietly(spillInput);
+        spillOutput = null;
+        spillInput = null;
+        spillBuffer = null;
+        FileUtils.deleteQuietly(spillFile);
+    }
+
+    /**
+     * Appends domains of the rule to the spill file
+     *
+     * @param previousRecord Offset of the previous record of the same selector or {@link #NO_RECORD}
+     * @param domains        Domains part of the rule
+     * @return Offset of the new record
+     */
+    private long spill(long previousRecord, String domains) throws IOException {
+        if (spillOutput == null) {
+            spillOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE));
+        }
+
+        byte[] bytes = domains.getBytes(UTF_8);
+        long offset = spillSize;
+        spillOutput.writeLong(previousRecord);
+        spillOutput.writeInt(bytes.length);
+        spillOutput.write(bytes);
+        spillSize += 8 + 4 + bytes.length;
+        return offset;
+    }
+
+    /**
+     * Reads domains of all the records of the selector in the order they were added.
+     * Spill file is mapped into memory on the first call.
+     *
+     * @param lastRecord Offset of the last record of the selector
+     * @return Unique domains
+     */
+    private Set<String> readDomains(long lastRecord) throws IOException {
+        if (spillBuffer == null) {
+            spillOutput.close();
+            spillInput = new RandomAccessFile(spillFile, "r");
+            FileChannel channel = spillInput.getChannel();
+            spillBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        List<String> records = new ArrayList<>();
+        for (long offset = lastRecord; offset != NO_RECORD; offset = spillBuffer.getLong((int) offset)) {
+            int length = spillBuffer.getInt((int) offset + 8);
+            byte[] bytes = new byte[length];
+            ByteBuffer record = spillBuffer.duplicate();
+            record.position((int) offset + 12);
+            record.get(bytes);
+            records.add(new String(bytes, UTF_8));
+        }
+
+        Set<String> domains = new LinkedHashSet<>();
+        for (int i = records.size() - 1; i >= 0; i--) {
+            Collections.addAll(domains, StringUtils.split(records.get(i), DOMAINS_DELIMITER));
+        }
+        return domains;
+    }
+
+    /**
+     * Checks if the generic rules are disabled on the domain or any of its parent domains
+     *
+     * @param domain Domain of an element hiding rule
+     * @return true if there is a $generichide exception for the domain
+     */
+    private boolean isGenerichide(String domain) {
+        if (generichideDomains.size() == 0) {
+            return false;
+        }
+
+        String lowerCaseDomain = domain.toLowerCase();
+        int start = 0;
+        while (start < lowerCaseDomain.length()) {
+            if (generichideDomains.contains(HashUtils.fingerprint(lowerCaseDomain, start, lowerCaseDomain.length()))) {
+                return true;
+            }
+
+            int dotIndex = lowerCaseDomain.indexOf('.', start);
+            if (dotIndex < 0) {
+                break;
+            }
+            start = dotIndex + 1;
+        }
+        return false;
+    }
+
+    private static boolean isDomainChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '_';
+    }
+
+    /**
+     * Gets position of the element hiding marker
+     *
+     * @param rule Rule text
+     * @return Marker index or -1 if the rule can't be merged
+     */
+    private static int getMarkerIndex(String rule) {
+        int markerIndex = rule.indexOf(MARKER);
+        if (markerIndex < 0 || markerIndex + MARKER.length() == rule.length()) {
+            return -1;
+        }
+
+        for (int i = 0; i < markerIndex; i++) {
+            char c = rule.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '.' && c != '-' && c != '_' && c != '*' && c != DOMAINS_DELIMITER) {
+                return -1;
+            }
+        }
+        return markerIndex;
+    }
+
+    /**
+     * @return Number of bytes the rule takes in the output
+     */
+    private static int getLineBytes(String rule) {
+        return rule.getBytes(UTF_8).length + 1;
+    }
+}
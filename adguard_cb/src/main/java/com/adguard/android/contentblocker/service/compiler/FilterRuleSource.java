@@ -0,0 +1,93 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
+import com.adguard.android.contentblocker.db.FilterRuleDao;
+import com.adguard.android.contentblocker.model.FilterList;
+import com.adguard.android.contentblocker.model.RuleDiff;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Rule source backed by the rules of a filter list
+ */
+public class FilterRuleSource implements RuleSource {
+
+    private final FilterRuleDao filterRuleDao;
+    private final FilterList filter;
+    private final boolean useCosmetics;
+    private final boolean useComments;
+
+    /**
+     * Creates an instance of the filter rule source
+     *
+     * @param filterRuleDao Filter rules dao
+     * @param filter        Filter list
+     * @param useCosmetics  If false - cosmetic rules are excluded
+     * @param useComments   True if comments get to the output, so that changed comments require recompilation
+     */
+    public FilterRuleSource(FilterRuleDao filterRuleDao, FilterList filter, boolean useCosmetics, boolean useComments) {
+        this.filterRuleDao = filterRuleDao;
+        this.filter = filter;
+        this.useCosmetics = useCosmetics;
+        this.useComments = useComments;
+    }
+
+    @Override
+    public String getName() {
+        return "filter_" + filter.getFilterId();
+    }
+
+    /**
+     * Stamp is based on the fingerprint of the rules set, so an update which
+     * has changed comments only (e.g. the version header) does not cause recompilation
+     * unless the comments are written to the output.
+     */
+    @Override
+    public String getStamp() {
+        RuleDiff diff = filterRuleDao.getRuleDiff(filter.getFilterId());
+        if (diff != null) {
+            String stamp = Long.toHexString(diff.getRulesFingerprint());
+            if (useComments) {
+                stamp += ":" + Long.toHexString(diff.getCommentsFingerprint());
+            }
+            return stamp + ":" + useCosmetics;
+        }
+
+        return filter.getVersion().getLongVersionString() + ":" +
+                filterRuleDao.getFilterRulesTimestamp(filter.getFilterId()) + ":" +
+                useCosmetics;
+    }
+
+    @Override
+    public void readRules(LineConsumer consumer) throws IOException {
+        filterRuleDao.readRules(filter.getFilterId(), useCosmetics, consumer);
+    }
+
+    @Override
+    public File getRuleStore() throws IOException {
+        return filterRuleDao.getRuleStore(filter.getFilterId());
+    }
+
+    @Override
+    public boolean isRuleTypeIncluded(RuleType ruleType) {
+        return useCosmetics || !ruleType.isCosmetic();
+    }
+}
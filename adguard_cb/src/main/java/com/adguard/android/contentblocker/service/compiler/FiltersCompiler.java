@@ -0,0 +1,648 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.HashUtils;
+import com.adguard.android.contentblocker.commons.LongHashSet;
+import com.adguard.android.contentblocker.commons.io.AtomicFile;
+import com.adguard.android.contentblocker.commons.io.IoUtils;
+import com.adguard.android.contentblocker.commons.io.RuleStore;
+import com.adguard.android.contentblocker.commons.io.RuleStoreReader;
+import com.adguard.android.contentblocker.commons.io.RuleStoreWriter;
+import com.adguard.android.contentblocker.commons.web.DomainTrie;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Incremental compiler of the filters file.
+ * <p>
+ * Every rule source (filter list, user rules, whitelist) is represented by a {@link RuleStore}.
+ * Filter lists have their own precompiled rule stores, other sources are compiled into segments.
+ * A segment is rebuilt only when the stamp of its source changes, after that all the
+ * rule stores are memory-mapped and spliced into the output file without decoding the rules.
+ * Peak memory does not depend on the size of the rule texts: rules, covering domains
+ * and element hiding selectors are kept as 64-bit fingerprints while compiling,
+ * domains of the element hiding rules to merge are spilled to a temporary file.
+ * <p>
+ * Segments are shared by all the outputs, every output is compiled with its own {@link CompileProfile}.
+ * Exception rules of all the sources are written before the other rules, so that the profile rule budget
+ * never cuts them off while keeping the blocking rules they are meant to relax.
+ * <p>
+ * Network rules covered by more general rules are dropped, see {@link RedundantRulesFilter}.
+ * Element hiding rules with the same selector are merged, see {@link CosmeticRulesMerger}.
+ * Rules limited to the whitelisted websites are dropped, see {@link WhitelistedRulesFilter}.
+ */
+public class FiltersCompiler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FiltersCompiler.class);
+
+    private static final String SEGMENTS_DIR = "compiled";
+    private static final String SEGMENTS_INDEX_FILE = "segments.properties";
+    private static final String MERGER_SPILL_FILE = "merger.tmp";
+    private static final String SEGMENTS_FORMAT_KEY = "segments.format";
+    // Increment it when the segment format or the compiled output changes, so that everything is rebuilt
+    private static final String SEGMENTS_FORMAT_VERSION = "9";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int EXPECTED_RULES_COUNT = 128 * 1024;
+    // State of the last compiled output, keys are prefixed with the output file name
+    private static final String OUTPUT_KEY_PREFIX = "output.";
+    private static final String OUTPUT_INPUTS_KEY = ".inputs";
+    private static final String OUTPUT_CHECKSUM_KEY = ".checksum";
+    private static final String OUTPUT_RULES_KEY = ".rules";
+    private static final String OUTPUT_VERSION_KEY = ".version";
+    private static final String OUTPUT_TIMESTAMP_KEY = ".timestamp";
+    private static final String COMPRESSED_FILE_SUFFIX = ".gz";
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    // Exceptions of all the sources are written first, so that the rule budget cuts off blocking rules only
+    private static final List<Set<RuleType>> SECTION_PASSES = Collections.unmodifiableList(Arrays.<Set<RuleType>>asList(
+            EnumSet.of(RuleType.WHITELIST),
+            EnumSet.complementOf(EnumSet.of(RuleType.WHITELIST))));
+
+    private final File segmentsDir;
+    private final Map<String, CompileResult> lastResults = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an instance of the compiler
+     *
+     * @param filesDir Directory where the compiled segments are stored
+     */
+    public FiltersCompiler(File filesDir) {
+        this.segmentsDir = new File(filesDir, SEGMENTS_DIR);
+    }
+
+    /**
+     * Compiles rule sources into the output file.
+     * Only the segments which sources have changed are rebuilt.
+     * <p>
+     * Rules are streamed from the sources to the output, duplicates are detected
+     * by their 64-bit fingerprints so the rule texts are never kept in memory.
+     * <p>
+     * Nothing is compiled if the sources have not changed since the last compilation.
+     * Output file is not replaced if the newly compiled content is the same.
+     * Otherwise it is replaced atomically (see {@link AtomicFile}) and a new snapshot version is assigned,
+     * so that readers never see a partially written file.
+     *
+     * @param profile Compile profile of the output
+     * @param sources Rule sources in the order they should be written
+     * @param output  Output file
+     * @return Compilation result
+     * @throws IOException if something went wrong
+     */
+    public synchronized CompileResult compile(CompileProfile profile, List<RuleSource> sources, File output) throws IOException {
+        if (!segmentsDir.exists() && !segmentsDir.mkdirs()) {
+            throw new IOException("Cannot create directory " + segmentsDir);
+        }
+
+        Properties index = loadIndex();
+        String outputKey = OUTPUT_KEY_PREFIX + output.getName();
+        String inputsFingerprint = getInputsFingerprint(profile, sources, output);
+        CompileResult previous = readOutputState(index, outputKey);
+        if (output.exists() && previous != null
+                && inputsFingerprint.equals(index.getProperty(outputKey + OUTPUT_INPUTS_KEY))) {
+            LOG.info("Rule sources have not changed, skipping compilation");
+            File compressedOutput = getCompressedOutput(output);
+            if (!compressedOutput.exists()) {
+                compress(output, compressedOutput);
+            }
+            lastResults.put(outputKey, previous);
+            return previous;
+        }
+
+        // Removing the output state first so that a failed compilation won't be taken as up to date
+        index.remove(outputKey + OUTPUT_INPUTS_KEY);
+        LongHashSet fingerprints = new LongHashSet(EXPECTED_RULES_COUNT);
+        AtomicFile outputFile = new AtomicFile(output);
+        AtomicFile compressedFile = new AtomicFile(getCompressedOutput(output));
+        int ruleCount = 0;
+
+        Map<RuleSource, File> ruleStores = new LinkedHashMap<>();
+        for (RuleSource source : sources) {
+            try {
+                File ruleStore = source.getRuleStore();
+                ruleStores.put(source, ruleStore == null ? getSegment(source, index) : ruleStore);
+            } catch (IOException ex) {
+                LOG.error("Cannot compile rules of {}, skipping them", source.getName(), ex);
+            }
+        }
+        RedundantRulesFilter redundantRulesFilter = new RedundantRulesFilter();
+        CosmeticRulesMerger cosmeticRulesMerger = new CosmeticRulesMerger(new File(segmentsDir, MERGER_SPILL_FILE));
+        WhitelistedRulesFilter whitelistedRulesFilter = new WhitelistedRulesFilter(getWhitelist(sources));
+        collectRules(ruleStores, profile, redundantRulesFilter, cosmeticRulesMerger, whitelistedRulesFilter);
+
+        FileOutputStream outputStream = null;
+        FileOutputStream compressedStream = null;
+        try {
+            outputStream = outputFile.startWrite();
+            compressedStream = compressedFile.startWrite();
+            GZIPOutputStream gzipStream = new GZIPOutputStream(compressedStream, BUFFER_SIZE);
+            CompiledOutput compiledOutput = new CompiledOutput(outputStream.getChannel(), gzipStream);
+            for (Set<RuleType> types : SECTION_PASSES) {
+                for (Map.Entry<RuleSource, File> entry : ruleStores.entrySet()) {
+                    ruleCount += appendRules(entry.getValue(), entry.getKey(), types, profile, profile.getRuleBudget() - ruleCount,
+                            fingerprints, redundantRulesFilter, cosmeticRulesMerger, whitelistedRulesFilter, compiledOutput);
+                }
+            }
+            compiledOutput.flush();
+            LOG.info("Dropped {} redundant network rules", redundantRulesFilter.getRedundantRulesCount());
+            LOG.info("Merged element hiding rules, {} bytes saved", cosmeticRulesMerger.getSavedBytes());
+            LOG.info("Dropped {} rules of the whitelisted websites", whitelistedRulesFilter.getWhitelistedRulesCount());
+            gzipStream.finish();
+
+            String checksum = compiledOutput.getChecksum();
+            boolean changed = previous == null || !output.exists() || !checksum.equals(previous.getChecksum());
+            if (changed || !compressedFile.getFile().exists()) {
+                // Compressed file is published first, so it is up to date once browsers are notified
+                compressedFile.finishWrite(compressedStream);
+            } else {
+                compressedFile.failWrite(compressedStream);
+            }
+            compressedStream = null;
+
+            if (changed) {
+                outputFile.finishWrite(outputStream);
+                long version = previous == null ? 1 : previous.getVersion() + 1;
+                index.setProperty(outputKey + OUTPUT_VERSION_KEY, Long.toString(version));
+                index.setProperty(outputKey + OUTPUT_TIMESTAMP_KEY, Long.toString(System.currentTimeMillis()));
+                LOG.info("Published {} snapshot {}", output.getName(), version);
+            } else {
+                LOG.info("Compiled {} has not changed", output.getName());
+                outputFile.failWrite(outputStream);
+            }
+            outputStream = null;
+
+            index.setProperty(outputKey + OUTPUT_INPUTS_KEY, inputsFingerprint);
+            index.setProperty(outputKey + OUTPUT_CHECKSUM_KEY, checksum);
+            index.setProperty(outputKey + OUTPUT_RULES_KEY, Integer.toString(ruleCount));
+            CompileResult result = readOutputState(index, outputKey);
+            lastResults.put(outputKey, result);
+            return new CompileResult(result, changed);
+        } finally {
+            if (outputStream != null) {
+                outputFile.failWrite(outputStream);
+            }
+            if (compressedStream != null) {
+                compressedFile.failWrite(compressedStream);
+            }
+            cosmeticRulesMerger.close();
+            saveIndex(index);
+        }
+    }
+
+    /**
+     * Gets the gzip-compressed variant of the output file.
+     * It is compiled along with the output file.
+     *
+     * @param output Output file
+     * @return Compressed output file
+     */
+    public static File getCompressedOutput(File output) {
+        return new File(output.getPath() + COMPRESSED_FILE_SUFFIX);
+    }
+
+    /**
+     * Removes all the compiled segments
+     */
+    public synchronized void clear() {
+        FileUtils.deleteQuietly(segmentsDir);
+        lastResults.clear();
+    }
+
+    /**
+     * Gets the state of the last published output.
+     * It does not wait for the compilation in progress.
+     *
+     * @param output Output file
+     * @return State of the output or null if nothing has been compiled yet
+     */
+    public CompileResult getLastResult(File output) {
+        String outputKey = OUTPUT_KEY_PREFIX + output.getName();
+        CompileResult result = lastResults.get(outputKey);
+        if (result == null) {
+            result = readOutputState(loadIndex(), outputKey);
+            if (result != null) {
+                lastResults.put(outputKey, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the segment of the source, it is rebuilt if the source has changed
+     *
+     * @param source Rule source
+     * @param index  Segments index
+     * @return Segment file
+     */
+    private File getSegment(RuleSource source, Properties index) throws IOException {
+        String name = source.getName();
+        String stamp = source.getStamp();
+        File segment = new File(segmentsDir, name);
+
+        if (!segment.exists() || !stamp.equals(index.getProperty(name))) {
+            LOG.info("Rebuilding segment {}", name);
+            // Removing the stamp first so that a failed build won't be taken as up to date
+            index.remove(name);
+            try {
+                buildSegment(source, segment);
+            } catch (IOException ex) {
+                FileUtils.deleteQuietly(segment);
+                throw ex;
+            }
+            index.setProperty(name, stamp);
+        }
+
+        return segment;
+    }
+
+    /**
+     * Writes unique rules of the source to the segment file.
+     * Segment is a {@link RuleStore}.
+     *
+     * @param source  Rule source
+     * @param segment Segment file
+     */
+    private void buildSegment(RuleSource source, File segment) throws IOException {
+        final LongHashSet fingerprints = new LongHashSet();
+
+        RuleStoreWriter writer = null;
+        try {
+            final RuleStoreWriter out = new RuleStoreWriter(segment, 0);
+            writer = out;
+            source.readRules(rule -> {
+                long fingerprint = HashUtils.fingerprint(rule);
+                if (fingerprints.add(fingerprint)) {
+                    out.write(RuleType.classify(rule), fingerprint, rule);
+                }
+            });
+            // Segment file is assembled on close, so its failure must not be swallowed
+            out.close();
+        } finally {
+            // Does nothing if the writer has been closed already
+            IoUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Collects the rules which are needed to optimize the output: network rules which can cover
+     * other rules, element hiding rules to merge and the exceptions disabling generic element hiding.
+     * Rules are walked in the same order they are appended to the output, so that a rule
+     * which might be cut off by the profile rule budget is not taken as a covering one.
+     *
+     * @param ruleStores             Rule stores of the sources
+     * @param profile                Compile profile of the output
+     * @param redundantRulesFilter   Filter of the redundant network rules
+     * @param cosmeticRulesMerger    Merger of the element hiding rules
+     * @param whitelistedRulesFilter Filter of the rules limited to the whitelisted websites
+     */
+    private static void collectRules(Map<RuleSource, File> ruleStores, CompileProfile profile,
+                                     RedundantRulesFilter redundantRulesFilter, CosmeticRulesMerger cosmeticRulesMerger,
+                                     WhitelistedRulesFilter whitelistedRulesFilter) {
+        int position = 0;
+        for (Set<RuleType> types : SECTION_PASSES) {
+            for (Map.Entry<RuleSource, File> entry : ruleStores.entrySet()) {
+                RuleSource source = entry.getKey();
+                RuleStoreReader reader = null;
+                try {
+                    reader = new RuleStoreReader(entry.getValue());
+                    for (RuleType type : types) {
+                        if (!source.isRuleTypeIncluded(type) || !profile.isRuleTypeIncluded(type)) {
+                            continue;
+                        }
+                        if (type != RuleType.NETWORK && type != RuleType.WHITELIST && type != RuleType.CSS) {
+                            position += reader.getCount(type);
+                            continue;
+                        }
+
+                        reader.select(type);
+                        while (reader.next()) {
+                            boolean withinBudget = position < profile.getRuleBudget();
+                            if (type == RuleType.WHITELIST) {
+                                // Keeping domain-specific rules for an exception cut off by the budget is harmless
+                                cosmeticRulesMerger.addException(reader.getRule());
+                            } else if (type == RuleType.CSS) {
+                                String rule = reader.getRule();
+                                if (!whitelistedRulesFilter.isWhitelisted(rule, type)) {
+                                    cosmeticRulesMerger.addRule(rule, withinBudget);
+                                }
+                            } else if (isDomainAnchored(reader.getRuleBytes())) {
+                                redundantRulesFilter.addRule(reader.getRule(), withinBudget);
+                            }
+                            position++;
+                        }
+                    }
+                } catch (IOException ex) {
+                    // Rules of this source won't be optimized, rule store is read once again while appending the rules
+                    LOG.warn("Cannot collect rules of {}", source.getName(), ex);
+                } finally {
+                    IoUtils.closeQuietly(reader);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends rules from the rule store that were not written yet.
+     * Only the sections of the rule types included both by the source and the profile are read,
+     * rules are copied from the mapped file to the output as is.
+     *
+     * @param ruleStore              Rule store file
+     * @param source                 Source of the rules
+     * @param types                  Types of the rules to append
+     * @param profile                Compile profile of the output
+     * @param budget                 Maximum number of rules to append
+     * @param fingerprints           Fingerprints of the rules that were already written
+     * @param redundantRulesFilter   Filter of the redundant network rules
+     * @param cosmeticRulesMerger    Merger of the element hiding rules
+     * @param whitelistedRulesFilter Filter of the rules limited to the whitelisted websites
+     * @param output                 Output
+     * @return Number of rules appended
+     */
+    private int appendRules(File ruleStore, RuleSource source, Set<RuleType> types, CompileProfile profile, int budget,
+                            LongHashSet fingerprints, RedundantRulesFilter redundantRulesFilter,
+                            CosmeticRulesMerger cosmeticRulesMerger, WhitelistedRulesFilter whitelistedRulesFilter,
+                            CompiledOutput output) throws IOException {
+        int count = 0;
+
+        RuleStoreReader reader = null;
+        try {
+            reader = new RuleStoreReader(ruleStore);
+            for (RuleType type : types) {
+                if (!source.isRuleTypeIncluded(type) || !profile.isRuleTypeIncluded(type)) {
+                    continue;
+                }
+
+                reader.select(type);
+                while (reader.next()) {
+                    if (count >= budget) {
+                        LOG.warn("Rule budget of {} is exhausted, rules of {} are truncated", profile, source.getName());
+                        return count;
+                    }
+                    if (fingerprints.add(reader.getFingerprint())) {
+                        ByteBuffer rule = reader.getRuleBytes();
+                        boolean checkRedundant = type == RuleType.NETWORK && redundantRulesFilter.hasCoveringRules() && isDomainAnchored(rule);
+                        // Rule is decoded once and only if some of the optimizations need its text
+                        String text = type == RuleType.CSS || checkRedundant
+                                || (type == RuleType.NETWORK && whitelistedRulesFilter.hasWhitelistedDomains())
+                                ? reader.getRule() : null;
+                        if (text != null && whitelistedRulesFilter.drop(text, type)) {
+                            continue;
+                        }
+                        if (checkRedundant && redundantRulesFilter.isRedundant(text)) {
+                            continue;
+                        }
+                        if (type == RuleType.CSS) {
+                            for (String merged : cosmeticRulesMerger.merge(text)) {
+                                if (count >= budget) {
+                                    break;
+                                }
+                                output.writeRule(ByteBuffer.wrap(merged.getBytes(UTF_8)));
+                                count++;
+                            }
+                            continue;
+                        }
+                        output.writeRule(rule);
+                        count++;
+                    }
+                }
+            }
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the domains of the whitelist source
+     *
+     * @param sources Rule sources
+     * @return Whitelisted domains, empty if there is no whitelist source
+     */
+    private static DomainTrie getWhitelist(List<RuleSource> sources) {
+        for (RuleSource source : sources) {
+            if (source instanceof WhitelistRuleSource) {
+                return ((WhitelistRuleSource) source).getDomains();
+            }
+        }
+        return new DomainTrie();
+    }
+
+    /**
+     * Checks if the rule starts with "||" without decoding it
+     *
+     * @param rule UTF-8 encoded rule text
+     * @return true if the rule is domain-anchored
+     */
+    private static boolean isDomainAnchored(ByteBuffer rule) {
+        int position = rule.position();
+        return rule.remaining() > 2 && rule.get(position) == '|' && rule.get(position + 1) == '|';
+    }
+
+    /**
+     * Compresses the output file which has no compressed variant yet
+     *
+     * @param output           Output file
+     * @param compressedOutput Compressed output file
+     */
+    private static void compress(File output, File compressedOutput) {
+        LOG.info("Compressing {}", output);
+        AtomicFile compressedFile = new AtomicFile(compressedOutput);
+        FileInputStream inputStream = null;
+        FileOutputStream outputStream = null;
+        try {
+            inputStream = new FileInputStream(output);
+            outputStream = compressedFile.startWrite();
+            GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+            IOUtils.copy(inputStream, gzipStream);
+            gzipStream.finish();
+            compressedFile.finishWrite(outputStream);
+        } catch (IOException ex) {
+            LOG.warn("Cannot compress {}", output, ex);
+            compressedFile.failWrite(outputStream);
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Reads state of the last compiled output from the index
+     *
+     * @param index     Segments index
+     * @param outputKey Prefix of the output keys
+     * @return State of the output or null if there is no valid state
+     */
+    private static CompileResult readOutputState(Properties index, String outputKey) {
+        String checksum = index.getProperty(outputKey + OUTPUT_CHECKSUM_KEY);
+        if (checksum == null) {
+            return null;
+        }
+
+        try {
+            int ruleCount = Integer.parseInt(index.getProperty(outputKey + OUTPUT_RULES_KEY));
+            long version = Long.parseLong(index.getProperty(outputKey + OUTPUT_VERSION_KEY));
+            long timestamp = Long.parseLong(index.getProperty(outputKey + OUTPUT_TIMESTAMP_KEY));
+            return new CompileResult(ruleCount, version, checksum, timestamp, false);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Calculates fingerprint of the compilation inputs
+     *
+     * @param profile Compile profile
+     * @param sources Rule sources
+     * @param output  Output file
+     * @return Hex-encoded fingerprint
+     */
+    private static String getInputsFingerprint(CompileProfile profile, List<RuleSource> sources, File output) {
+        StringBuilder sb = new StringBuilder(output.getPath());
+        sb.append('\n').append(profile.name());
+        for (RuleSource source : sources) {
+            sb.append('\n').append(source.getName()).append('=').append(source.getStamp());
+        }
+        return HashUtils.md5Hex(sb.toString());
+    }
+
+    private Properties loadIndex() {
+        Properties index = new Properties();
+        File indexFile = new File(segmentsDir, SEGMENTS_INDEX_FILE);
+        if (!indexFile.exists()) {
+            return index;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(indexFile);
+            index.load(inputStream);
+            if (!SEGMENTS_FORMAT_VERSION.equals(index.getProperty(SEGMENTS_FORMAT_KEY))) {
+                LOG.info("Segments format has changed, all segments will be rebuilt");
+                index.clear();
+            }
+        } catch (IOException ex) {
+            LOG.warn("Cannot load segments index, all segments will be rebuilt", ex);
+            index.clear();
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+        return index;
+    }
+
+    private void saveIndex(Properties index) {
+        // Index is read without locking by getLastResult(), so it is replaced atomically
+        AtomicFile indexFile = new AtomicFile(new File(segmentsDir, SEGMENTS_INDEX_FILE));
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = indexFile.startWrite();
+            index.setProperty(SEGMENTS_FORMAT_KEY, SEGMENTS_FORMAT_VERSION);
+            index.store(outputStream, null);
+            indexFile.finishWrite(outputStream);
+        } catch (IOException ex) {
+            LOG.warn("Cannot save segments index", ex);
+            indexFile.failWrite(outputStream);
+        }
+    }
+
+    /**
+     * Buffered output of the compiled rules.
+     * Checksum and compressed variant of the written content are calculated on the fly.
+     */
+    private static class CompiledOutput {
+
+        private final FileChannel channel;
+        private final OutputStream compressed;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] chunk = new byte[BUFFER_SIZE];
+        private final MessageDigest digest = HashUtils.newMd5();
+
+        CompiledOutput(FileChannel channel, OutputStream compressed) {
+            this.channel = channel;
+            this.compressed = compressed;
+        }
+
+        /**
+         * Writes the rule followed by a line break
+         *
+         * @param rule UTF-8 encoded rule text
+         */
+        void writeRule(ByteBuffer rule) throws IOException {
+            if (buffer.remaining() < rule.remaining() + 1) {
+                flush();
+            }
+            if (buffer.remaining() < rule.remaining() + 1) {
+                // Rule does not fit into the buffer
+                write(rule);
+            } else {
+                buffer.put(rule);
+            }
+            buffer.put((byte) '\n');
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * @return Hex-encoded MD5 checksum of the written content
+         */
+        String getChecksum() {
+            return HashUtils.toHex(digest.digest());
+        }
+
+        private void write(ByteBuffer bytes) throws IOException {
+            digest.update(bytes.duplicate());
+            writeCompressed(bytes.duplicate());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        private void writeCompressed(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                int length = Math.min(bytes.remaining(), chunk.length);
+                bytes.get(chunk, 0, length);
+                compressed.write(chunk, 0, length);
+            }
+        }
+    }
+}
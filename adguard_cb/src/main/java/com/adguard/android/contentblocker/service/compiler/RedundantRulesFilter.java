@@ -0,0 +1,203 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.HashUtils;
+import com.adguard.android.contentblocker.commons.LongHashSet;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <pre>
+ * Detects network rules which are already covered by more general rules.
+ *
+ * Domains of the simple blocking rules (||example.org^) are kept as 64-bit fingerprints, not as strings.
+ * A domain-anchored rule is redundant if a simple rule blocks its domain or any of the parent domains
+ * and the rule has only the modifiers narrowing down the requests it matches, for instance:
+ * ||ads.example.org^$third-party, ||example.org/banner.js, ||cdn.example.org^
+ *
+ * A simple rule disabled by $badfilter covers nothing.</pre>
+ */
+class RedundantRulesFilter {
+
+    private static final String DOMAIN_ANCHOR = "||";
+    private static final char SEPARATOR = '^';
+    private static final char PATH_SEPARATOR = '/';
+    private static final char OPTIONS_DELIMITER = '$';
+    private static final String OPTION_BADFILTER = "badfilter";
+    private static final String OPTION_DOMAIN = "domain=";
+
+    /**
+     * Modifiers which only narrow down the requests matched by a rule
+     */
+    private static final Set<String> NARROWING_OPTIONS = new HashSet<>(Arrays.asList(
+            "third-party", "first-party", "3p", "1p", "match-case",
+            "script", "image", "stylesheet", "subdocument", "xmlhttprequest",
+            "media", "font", "object", "other", "websocket", "ping"
+    ));
+
+    private final LongHashSet coveringDomains = new LongHashSet();
+    private final LongHashSet badfilteredDomains = new LongHashSet();
+    private int redundantRulesCount;
+
+    /**
+     * Adds the rule to the filter.
+     * Rules should be added before checking if any of them is redundant.
+     *
+     * @param rule     Network rule text
+     * @param canCover false if the rule might not get to the output, so it can't cover other rules
+     */
+    void addRule(String rule, boolean canCover) {
+        if (!rule.startsWith(DOMAIN_ANCHOR)) {
+            return;
+        }
+
+        int optionsIndex = rule.lastIndexOf(OPTIONS_DELIMITER);
+        if (optionsIndex > 0) {
+            for (String option : StringUtils.split(rule.substring(optionsIndex + 1), ',')) {
+                if (OPTION_BADFILTER.equalsIgnoreCase(option.trim())) {
+                    // Simple rule is disabled whatever the badfilter restrictions are
+                    String domain = parseSimpleRuleDomain(rule.substring(0, optionsIndex));
+                    if (domain != null) {
+                        badfilteredDomains.add(HashUtils.fingerprint(domain));
+                    }
+                    return;
+                }
+            }
+            return;
+        }
+
+        String domain = canCover ? parseSimpleRuleDomain(rule) : null;
+        if (domain != null) {
+            coveringDomains.add(HashUtils.fingerprint(domain));
+        }
+    }
+
+    /**
+     * @return true if there are rules which can cover other rules
+     */
+    boolean hasCoveringRules() {
+        return coveringDomains.size() > 0;
+    }
+
+    /**
+     * @return Number of rules found redundant
+     */
+    int getRedundantRulesCount() {
+        return redundantRulesCount;
+    }
+
+    /**
+     * Checks if the rule is covered by a more general simple rule
+     *
+     * @param rule Network rule text
+     * @return true if the rule can be dropped
+     */
+    boolean isRedundant(String rule) {
+        if (!rule.startsWith(DOMAIN_ANCHOR)) {
+            return false;
+        }
+
+        int domainEnd = DOMAIN_ANCHOR.length();
+        while (domainEnd < rule.length() && isDomainChar(rule.charAt(domainEnd))) {
+            domainEnd++;
+        }
+        if (domainEnd == DOMAIN_ANCHOR.length() || domainEnd == rule.length()) {
+            return false;
+        }
+        char separator = rule.charAt(domainEnd);
+        if (separator != SEPARATOR && separator != PATH_SEPARATOR) {
+            // Domain is not complete, e.g. ||example.org* or ||example.org:8080
+            return false;
+        }
+
+        int optionsIndex = rule.indexOf(OPTIONS_DELIMITER, domainEnd);
+        if (optionsIndex > 0 && !hasNarrowingOptionsOnly(rule.substring(optionsIndex + 1))) {
+            return false;
+        }
+
+        String domain = rule.substring(DOMAIN_ANCHOR.length(), domainEnd).toLowerCase();
+        // The domain itself and its parent domains are looked up by their fingerprints
+        int start = 0;
+        while (start < domain.length()) {
+            long fingerprint = HashUtils.fingerprint(domain, start, domain.length());
+            if (coveringDomains.contains(fingerprint) && !badfilteredDomains.contains(fingerprint)
+                    && (start > 0 || !isSimpleRule(rule, domainEnd))) {
+                redundantRulesCount++;
+                return true;
+            }
+
+            int dotIndex = domain.indexOf('.', start);
+            if (dotIndex < 0) {
+                break;
+            }
+            start = dotIndex + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Parses the domain of a simple domain blocking rule
+     *
+     * @param rule Rule text without modifiers
+     * @return Lower-cased domain or null if the rule is not a simple one
+     */
+    private static String parseSimpleRuleDomain(String rule) {
+        int domainEnd = rule.length() - 1;
+        if (domainEnd <= DOMAIN_ANCHOR.length() || rule.charAt(domainEnd) != SEPARATOR) {
+            return null;
+        }
+
+        for (int i = DOMAIN_ANCHOR.length(); i < domainEnd; i++) {
+            if (!isDomainChar(rule.charAt(i))) {
+                return null;
+            }
+        }
+
+        String domain = rule.substring(DOMAIN_ANCHOR.length(), domainEnd).toLowerCase();
+        // Rules like ||.org^ or ||example..org^ are not simple ones
+        return domain.startsWith(".") || domain.endsWith(".") || domain.contains("..") ? null : domain;
+    }
+
+    private static boolean isSimpleRule(String rule, int domainEnd) {
+        return domainEnd == rule.length() - 1 && rule.charAt(domainEnd) == SEPARATOR;
+    }
+
+    private static boolean hasNarrowingOptionsOnly(String options) {
+        for (String option : StringUtils.split(options, ',')) {
+            String name = option.trim().toLowerCase();
+            if (name.startsWith(OPTION_DOMAIN)) {
+                continue;
+            }
+            if (name.startsWith("~")) {
+                name = name.substring(1);
+            }
+            if (!NARROWING_OPTIONS.contains(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDomainChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '_';
+    }
+}
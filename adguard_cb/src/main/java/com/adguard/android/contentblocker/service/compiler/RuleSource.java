@@ -0,0 +1,67 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Source of rules compiled into a separate segment of the filters file.
+ */
+public interface RuleSource {
+
+    /**
+     * @return Unique source name. It is used as the segment file name.
+     */
+    String getName();
+
+    /**
+     * Returns a stamp describing the current state of the source.
+     * Segment is rebuilt only when this stamp changes.
+     *
+     * @return Source stamp
+     */
+    String getStamp();
+
+    /**
+     * Reads rules of this source one by one
+     *
+     * @param consumer Consumer of the rules
+     * @throws IOException if the rules cannot be read
+     */
+    void readRules(LineConsumer consumer) throws IOException;
+
+    /**
+     * Gets the precompiled rule store of this source.
+     * If there is one, it is used as is instead of a segment.
+     *
+     * @return Rule store file or null if the rules must be compiled into a segment
+     * @throws IOException if the rule store cannot be compiled
+     */
+    File getRuleStore() throws IOException;
+
+    /**
+     * Checks if rules of the specified type are included into the filters file
+     *
+     * @param ruleType Rule type
+     * @return true if rules of this type are written
+     */
+    boolean isRuleTypeIncluded(RuleType ruleType);
+}
@@ -0,0 +1,96 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.HashUtils;
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Rule source backed by the user filter
+ */
+public class UserRuleSource implements RuleSource {
+
+    private static final int MIN_RULE_LENGTH = 4;
+    private static final String ASCII_SYMBOL = "\\p{ASCII}+";
+    private static final String COMMENT = "!";
+    private static final String ADBLOCK_META_START = "[Adblock";
+    private static final String MASK_OBSOLETE_SCRIPT_INJECTION = "###adg_start_script_inject";
+    private static final String MASK_OBSOLETE_STYLE_INJECTION = "###adg_start_style_inject";
+
+    private final List<String> userRules;
+
+    /**
+     * Creates an instance of the user rule source
+     *
+     * @param userRules Enabled user rules
+     */
+    public UserRuleSource(List<String> userRules) {
+        this.userRules = userRules;
+    }
+
+    @Override
+    public String getName() {
+        return "user_rules";
+    }
+
+    @Override
+    public String getStamp() {
+        return HashUtils.md5Hex(StringUtils.join(userRules, "\n"));
+    }
+
+    @Override
+    public void readRules(LineConsumer consumer) throws IOException {
+        for (String userRule : userRules) {
+            if (validateRuleText(userRule)) {
+                consumer.accept(userRule);
+            }
+        }
+    }
+
+    /**
+     * Checks the rules of non ascii symbols and control symbols
+     *
+     * @param userRule rule
+     * @return true if correct rule or false
+     */
+    private static boolean validateRuleText(String userRule) {
+        return StringUtils.isNotBlank(userRule) &&
+                userRule.matches(ASCII_SYMBOL) &&
+                StringUtils.length(userRule) > MIN_RULE_LENGTH &&
+                !StringUtils.startsWith(userRule, COMMENT) &&
+                !StringUtils.startsWith(userRule, ADBLOCK_META_START) &&
+                !StringUtils.contains(userRule, MASK_OBSOLETE_SCRIPT_INJECTION) &&
+                !StringUtils.contains(userRule, MASK_OBSOLETE_STYLE_INJECTION);
+    }
+
+    @Override
+    public File getRuleStore() {
+        return null;
+    }
+
+    @Override
+    public boolean isRuleTypeIncluded(RuleType ruleType) {
+        return true;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.HashUtils;
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
+import com.adguard.android.contentblocker.commons.web.DomainTrie;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Rule source converting whitelisted domains to the exception rules.
+ * Subdomains of the whitelisted domains are skipped as the exception rule of the parent domain covers them.
+ */
+public class WhitelistRuleSource implements RuleSource {
+
+    private final List<String> whitelist;
+    private final DomainTrie domains = new DomainTrie();
+    private final boolean documentWorkaround;
+
+    /**
+     * Creates an instance of the whitelist rule source
+     *
+     * @param whitelist          Enabled whitelisted domains
+     * @param documentWorkaround If true - rules working without $document modifier support are added
+     */
+    public WhitelistRuleSource(List<String> whitelist, boolean documentWorkaround) {
+        this.whitelist = whitelist;
+        this.documentWorkaround = documentWorkaround;
+        for (String domain : whitelist) {
+            domains.add(domain, true);
+        }
+    }
+
+    /**
+     * @return Whitelisted domains
+     */
+    public DomainTrie getDomains() {
+        return domains;
+    }
+
+    @Override
+    public String getName() {
+        return documentWorkaround ? "whitelist_compat" : "whitelist";
+    }
+
+    @Override
+    public String getStamp() {
+        return HashUtils.md5Hex(StringUtils.join(whitelist, "\n"));
+    }
+
+    @Override
+    public void readRules(LineConsumer consumer) throws IOException {
+        for (String domain : whitelist) {
+            if (domains.hasEnabledParent(domain)) {
+                continue;
+            }
+
+            consumer.accept(createWhiteListRule(domain));
+
+            if (documentWorkaround) {
+                /**
+                 * Add these rules, because the Ya Browser does not support the $document modifier
+                 */
+                // TODO Should remove this after the Ya Browser browser add support $document modifier
+                consumer.accept(String.format("@@http*$domain=%s", domain));
+                consumer.accept(String.format("@@||%s^$elemhide", domain));
+            }
+        }
+    }
+
+    /**
+     * Creates whilelist rule from domain name
+     *
+     * @param domain Domain name
+     * @return Url filter rule text
+     */
+    private static String createWhiteListRule(String domain) {
+        return "@@{0}^$document".replace("{0}", domain);
+    }
+
+    @Override
+    public File getRuleStore() {
+        return null;
+    }
+
+    @Override
+    public boolean isRuleTypeIncluded(RuleType ruleType) {
+        return true;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.web.DomainTrie;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * <pre>
+ * Detects rules which can never apply because they are limited to the whitelisted websites.
+ *
+ * A whitelisted website is excluded with a $document exception, so these rules are dropped:
+ * example.org,other.org##.banner (if both example.org and other.org are whitelisted)
+ * ||ads.net^$domain=example.org|sub.other.org
+ *
+ * Rules with excluded domains (~example.org) or wildcard domains are kept.</pre>
+ */
+class WhitelistedRulesFilter {
+
+    private static final String EXCEPTION_MARKER = "@@";
+    private static final String ELEMHIDE_MARKER = "##";
+    private static final char OPTIONS_DELIMITER = '$';
+    private static final String OPTION_DOMAIN = "domain=";
+
+    private final DomainTrie whitelist;
+    private int whitelistedRulesCount;
+
+    /**
+     * Creates an instance of the filter
+     *
+     * @param whitelist Whitelisted domains
+     */
+    WhitelistedRulesFilter(DomainTrie whitelist) {
+        this.whitelist = whitelist;
+    }
+
+    /**
+     * @return true if there are whitelisted domains
+     */
+    boolean hasWhitelistedDomains() {
+        return !whitelist.isEmpty();
+    }
+
+    /**
+     * @return Number of rules dropped
+     */
+    int getWhitelistedRulesCount() {
+        return whitelistedRulesCount;
+    }
+
+    /**
+     * Checks if the rule should be dropped and counts it if so
+     *
+     * @param rule Rule text
+     * @param type Rule type
+     * @return true if the rule applies to the whitelisted websites only
+     */
+    boolean drop(String rule, RuleType type) {
+        if (isWhitelisted(rule, type)) {
+            whitelistedRulesCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the rule applies to the whitelisted websites only
+     *
+     * @param rule Rule text
+     * @param type Rule type
+     * @return true if the rule applies to the whitelisted websites only
+     */
+    boolean isWhitelisted(String rule, RuleType type) {
+        if (whitelist.isEmpty()) {
+            return false;
+        }
+
+        if (type == RuleType.CSS) {
+            int markerIndex = rule.indexOf(ELEMHIDE_MARKER);
+            return markerIndex > 0 && areWhitelisted(StringUtils.split(rule.substring(0, markerIndex), ','));
+        }
+
+        if (type == RuleType.NETWORK && !rule.startsWith(EXCEPTION_MARKER)) {
+            int optionsIndex = rule.lastIndexOf(OPTIONS_DELIMITER);
+            if (optionsIndex < 0) {
+                return false;
+            }
+            for (String option : StringUtils.split(rule.substring(optionsIndex + 1), ',')) {
+                String trimmedOption = option.trim();
+                if (StringUtils.startsWithIgnoreCase(trimmedOption, OPTION_DOMAIN)) {
+                    return areWhitelisted(StringUtils.split(trimmedOption.substring(OPTION_DOMAIN.length()), '|'));
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean areWhitelisted(String[] domains) {
+        if (domains == null || domains.length == 0) {
+            return false;
+        }
+
+        for (String domain : domains) {
+            if (!isPlainDomain(domain) || !whitelist.matches(domain)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPlainDomain(String domain) {
+        if (StringUtils.isEmpty(domain)) {
+            return false;
+        }
+
+        for (int i = 0; i < domain.length(); i++) {
+            char c = domain.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '.' && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -35,6 +35,7 @@ import android.util.Patterns;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.CheckBox;
 import android.widget.EditText;
@@ -52,16 +53,20 @@ import com.adguard.android.contentblocker.service.PreferencesService;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
 public class UserFilterActivity extends AppCompatActivity implements FilterService.OnImportListener {
 
     private static final int REQUEST_CODE = 1237;
+    // User rules are loaded page by page as the list is scrolled
+    private static final int PAGE_SIZE = 200;
 
     private FilterService filterService;
     private FilterRulesAdapter userFilterAdapter;
     private FloatingActionButton addUserRuleFloatingButton;
+    private int userRulesCount;
 
     private boolean overwriteRules = false;
 
@@ -73,12 +78,26 @@ public class UserFilterActivity extends AppCompatActivity implements FilterServi
         setupActionBar();
 
         filterService = ServiceLocator.getInstance(this).getFilterService();
-        userFilterAdapter = new UserFilterRulesAdapter(this, filterService.getUserRulesItems(), filterService.getDisabledUserRules());
+        userRulesCount = filterService.getUserRulesCount();
+        userFilterAdapter = new UserFilterRulesAdapter(this, new ArrayList<>(filterService.getUserRulesItems(0, PAGE_SIZE)),
+                filterService.getDisabledUserRules());
 
         View emptyListWrapper = findViewById(R.id.userfilterEmptyWrapper);
         ListView userFilterList = findViewById(R.id.user_filter_list);
         userFilterList.setEmptyView(emptyListWrapper);
         userFilterList.setAdapter(userFilterAdapter);
+        userFilterList.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (firstVisibleItem + visibleItemCount >= totalItemCount - PAGE_SIZE / 2) {
+                    loadNextPage();
+                }
+            }
+        });
         userFilterList.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
@@ -178,11 +197,30 @@ public class UserFilterActivity extends AppCompatActivity implements FilterServi
     }
 
     private void updateAdapter() {
-        List<String> userRules = filterService.getUserRulesItems();
+        userRulesCount = filterService.getUserRulesCount();
+        List<String> userRules = filterService.getUserRulesItems(0, PAGE_SIZE);
         Set<String> disabledItems = filterService.getDisabledUserRules();
         userFilterAdapter.reload(userRules, disabledItems);
     }
 
+    /**
+     * Appends the next page of the user rules to the list if not all of them are loaded
+     */
+    private void loadNextPage() {
+        int loadedCount = userFilterAdapter.getCount();
+        if (loadedCount >= userRulesCount) {
+            return;
+        }
+
+        List<String> userRules = filterService.getUserRulesItems(loadedCount, PAGE_SIZE);
+        if (userRules.isEmpty()) {
+            // Rules have been removed meanwhile
+            userRulesCount = loadedCount;
+            return;
+        }
+        userFilterAdapter.addAll(userRules);
+    }
+
     @SuppressLint("InflateParams")
     private void showNewOrEditItemDialog(final String rule, final int position) {
         View dialogLayout = getLayoutInflater().inflate(R.layout.new_item_dialog, null);
@@ -319,10 +357,16 @@ public class UserFilterActivity extends AppCompatActivity implements FilterServi
 
         @Override
         public void add(String item) {
-            super.add(item);
+            boolean allLoaded = getCount() >= userRulesCount;
+            filterService.addUserRuleItem(item);
+            int newCount = filterService.getUserRulesCount();
+            if (allLoaded && newCount > userRulesCount) {
+                // New rule goes to the end, otherwise it is loaded along with the last page
+                super.add(item);
+            }
+            userRulesCount = newCount;
             // Make sure that the rule is not disabled
             filterService.enableUserRule(item, true);
-            filterService.addUserRuleItem(item);
             updateFloatingButton();
             new ApplyAndRefreshTask(filterService, UserFilterActivity.this).execute();
         }
@@ -330,17 +374,17 @@ public class UserFilterActivity extends AppCompatActivity implements FilterServi
         @Override
         public void remove(String item) {
             super.remove(item);
-            // We do this just to make sure that there are no ghost records in the disabled rules list
-            filterService.enableUserRule(item, true);
-            filterService.setUserRules(getText());
+            filterService.removeUserRuleItem(item);
+            userRulesCount = filterService.getUserRulesCount();
             updateFloatingButton();
             new ApplyAndRefreshTask(filterService, UserFilterActivity.this).execute();
         }
 
         @Override
         public void replace(String item, int index) {
+            String oldItem = getItem(index);
             super.replace(item, index);
-            filterService.setUserRules(getText());
+            filterService.replaceUserRuleItem(oldItem, item);
             updateFloatingButton();
             new ApplyAndRefreshTask(filterService, UserFilterActivity.this).execute();
         }
@@ -34,13 +34,12 @@ import android.widget.ListView;
 
 import com.adguard.android.contentblocker.R;
 import com.adguard.android.contentblocker.ServiceLocator;
+import com.adguard.android.contentblocker.commons.web.DomainTrie;
 import com.adguard.android.contentblocker.service.FilterService;
 import com.adguard.android.contentblocker.ui.utils.AlertDialogUtils;
 import com.adguard.android.contentblocker.ui.utils.ApplyAndRefreshTask;
 import com.adguard.android.contentblocker.ui.utils.FilterRulesAdapter;
 
-import org.apache.commons.lang3.StringUtils;
-
 import java.util.List;
 import java.util.Set;
 
@@ -142,11 +141,11 @@ public class WhitelistActivity extends AppCompatActivity {
         alertDialog.setOnShowListener(dialog -> {
             alertDialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(v -> {
                 Editable text = view.getText();
-                String item = StringUtils.trim(text.toString());
+                String item = DomainTrie.normalize(text.toString());
 
                 if (!validateWhitelistItem(item)) {
                     view.setError(getString(R.string.whitelistNewItemErrorMessage));
-                } else if (filterService.getWhiteListItems().contains(item)) {
+                } else if (filterService.containsWhitelistItem(item)) {
                     view.setError(getString(R.string.whitelistNewItemExistsErrorMessage));
                 } else {
                     if (domainName == null) {
@@ -178,9 +177,9 @@ public class WhitelistActivity extends AppCompatActivity {
         @Override
         public void add(String item) {
             super.add(item);
+            filterService.addWhitelistItem(item);
             // Make sure that the rule is not disabled
             filterService.enableWhitelistRule(item, true);
-            filterService.addWhitelistItem(item);
             new ApplyAndRefreshTask(filterService, WhitelistActivity.this).execute();
             invalidateOptionsMenu();
         }
@@ -188,17 +187,16 @@ public class WhitelistActivity extends AppCompatActivity {
         @Override
         public void remove(String item) {
             super.remove(item);
-            // We do this just to make sure that there are no ghost records in the disabled rules list
-            filterService.enableWhitelistRule(item, true);
-            filterService.setWhiteList(getText());
+            filterService.removeWhitelistItem(item);
             new ApplyAndRefreshTask(filterService, WhitelistActivity.this).execute();
             invalidateOptionsMenu();
         }
 
         public void replace(String item, int index) {
-            super.remove(getItem(index));
+            String oldItem = getItem(index);
+            super.remove(oldItem);
             super.insert(item, index);
-            filterService.setWhiteList(getText());
+            filterService.replaceWhitelistItem(oldItem, item);
             new ApplyAndRefreshTask(filterService, WhitelistActivity.this).execute();
             invalidateOptionsMenu();
         }
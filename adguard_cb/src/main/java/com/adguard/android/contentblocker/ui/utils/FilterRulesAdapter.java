@@ -29,6 +29,7 @@ import android.widget.Filterable;
 import android.widget.TextView;
 
 import com.adguard.android.contentblocker.R;
+import com.adguard.android.contentblocker.model.RuleType;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -208,7 +209,12 @@ public class FilterRulesAdapter extends BaseAdapter implements Filterable {
         }
     }
 
-    private void addAll(List<String> list) {
+    /**
+     * Appends values to the end of the list, e.g. the next page of the rules
+     *
+     * @param list Values to append
+     */
+    public void addAll(List<String> list) {
         if (originalValues != null) {
             originalValues.addAll(list);
         } else {
@@ -234,8 +240,7 @@ public class FilterRulesAdapter extends BaseAdapter implements Filterable {
      * @return true if this is a comment
      */
     private boolean isRuleComment(String rule) {
-        return StringUtils.startsWith(rule, "!") ||
-                StringUtils.startsWith(rule, "[Adblock");
+        return RuleType.classify(rule) == RuleType.COMMENT;
     }
 
     /**
@@ -247,21 +252,22 @@ public class FilterRulesAdapter extends BaseAdapter implements Filterable {
     private int getRuleColor(String rule) {
 
         Resources resources = context.getResources();
-        if (isRuleComment(rule)) {
-            return resources.getColor(R.color.ruleColorCommentLight);
-        } else if (StringUtils.startsWith(rule, "@@")) {
-            return resources.getColor(R.color.ruleColorWhitelistLight);
-        } else if (StringUtils.containsAny(rule, "#%#", "#@%#")) {
-            return resources.getColor(R.color.ruleColorJavaScriptLight);
-        } else if (StringUtils.containsAny(rule, "#$#", "#@$#")) {
-            return resources.getColor(R.color.ruleColorCssInjectLight);
-        } else if (StringUtils.containsAny(rule, "##", "#@#")) {
-            return resources.getColor(R.color.ruleColorCssLight);
-        } else if (StringUtils.containsAny(rule, "$$", "$@$")) {
-            return resources.getColor(R.color.ruleColorContentLight);
+        switch (RuleType.classify(rule)) {
+            case COMMENT:
+                return resources.getColor(R.color.ruleColorCommentLight);
+            case WHITELIST:
+                return resources.getColor(R.color.ruleColorWhitelistLight);
+            case SCRIPT:
+                return resources.getColor(R.color.ruleColorJavaScriptLight);
+            case CSS_INJECT:
+                return resources.getColor(R.color.ruleColorCssInjectLight);
+            case CSS:
+                return resources.getColor(R.color.ruleColorCssLight);
+            case CONTENT:
+                return resources.getColor(R.color.ruleColorContentLight);
+            default:
+                return resources.getColor(R.color.ruleColorDefaultLight);
         }
-
-        return resources.getColor(R.color.ruleColorDefaultLight);
     }
 
     /**
@@ -95,8 +95,11 @@ public class FilterViewAdapter extends BaseAdapter implements View.OnClickListen
     @Override
     public void onClick(View v) {
         FilterList filterList = (FilterList) v.getTag();
-        filterService.updateFilterEnabled(filterList, !filterList.isEnabled());
-        ((CheckBox) v.findViewById(R.id.checkbox)).setChecked(filterList.isEnabled());
+        boolean enabled = !filterList.isEnabled();
+        filterService.updateFilterEnabled(filterList, enabled);
+        ((CheckBox) v.findViewById(R.id.checkbox)).setChecked(enabled);
+        // Views are bound to the filter lists from the new snapshot
+        notifyDataSetChanged();
         new ApplyAndRefreshTask(filterService, context).execute();
     }
 
@@ -14,4 +14,16 @@ filter_list_id INTEGER,
 language_code VARCHAR(2),
 filter_name VARCHAR(255),
 filter_description VARCHAR(1024)
+);
+
+CREATE TABLE user_rules (
+rule_id INTEGER PRIMARY KEY AUTOINCREMENT,
+rule_text TEXT NOT NULL UNIQUE,
+enabled INTEGER NOT NULL DEFAULT 1
+);
+
+CREATE TABLE whitelist_rules (
+rule_id INTEGER PRIMARY KEY AUTOINCREMENT,
+rule_text TEXT NOT NULL UNIQUE,
+enabled INTEGER NOT NULL DEFAULT 1
 );
\ No newline at end of file
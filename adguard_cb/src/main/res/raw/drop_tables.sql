@@ -1,3 +1,5 @@
 DROP TABLE IF EXISTS filter_lists;
 DROP TABLE IF EXISTS filters_localization;
-DROP TABLE IF EXISTS traffic_stats;
\ No newline at end of file
+DROP TABLE IF EXISTS traffic_stats;
+DROP TABLE IF EXISTS user_rules;
+DROP TABLE IF EXISTS whitelist_rules;
\ No newline at end of file
@@ -0,0 +1,5 @@
+CREATE TABLE IF NOT EXISTS whitelist_rules (
+rule_id INTEGER PRIMARY KEY AUTOINCREMENT,
+rule_text TEXT NOT NULL UNIQUE,
+enabled INTEGER NOT NULL DEFAULT 1
+);
\ No newline at end of file
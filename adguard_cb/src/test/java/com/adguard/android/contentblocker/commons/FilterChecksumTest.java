@@ -0,0 +1,80 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FilterChecksumTest {
+
+    private static final String CONTENT = "! Title: Test\n||a.com^\n||b.com^";
+
+    @Test
+    public void matchingChecksumIsVerified() throws Exception {
+        String checksum = md5(CONTENT);
+        assertTrue(verify("! Checksum: " + checksum + "\n" + CONTENT));
+        // Line breaks and empty lines are not taken into account
+        assertTrue(verify("! Checksum: " + checksum + "\r\n! Title: Test\r\n\r\n||a.com^\r\n||b.com^\r\n"));
+        // Filter content may end with a line break
+        assertTrue(verify("! Checksum: " + md5(CONTENT + "\n") + "\n" + CONTENT));
+    }
+
+    @Test
+    public void checksumMismatchIsDetected() throws Exception {
+        String checksum = md5(CONTENT);
+        assertFalse(verify("! Checksum: " + checksum + "\n" + CONTENT + "\n||c.com^"));
+        assertFalse(verify("! Checksum: " + checksum + "\n" + StringUtils.replace(CONTENT, "b.com", "b.org")));
+    }
+
+    @Test
+    public void missingChecksumIsNotVerified() {
+        FilterChecksum checksum = new FilterChecksum();
+        for (String line : CONTENT.split("\n")) {
+            checksum.update(line);
+        }
+        assertNull(checksum.getExpectedChecksum());
+        assertFalse(checksum.verify());
+    }
+
+    @Test
+    public void checksumHeaderIsParsed() throws Exception {
+        FilterChecksum checksum = new FilterChecksum();
+        checksum.update("!  checksum:   abc+/12");
+        assertEquals("abc+/12", checksum.getExpectedChecksum());
+    }
+
+    private static boolean verify(String filter) {
+        FilterChecksum checksum = new FilterChecksum();
+        for (String line : StringUtils.splitPreserveAllTokens(StringUtils.remove(filter, '\r'), '\n')) {
+            checksum.update(line);
+        }
+        return checksum.verify();
+    }
+
+    private static String md5(String content) throws Exception {
+        byte[] hash = MessageDigest.getInstance("MD5").digest(content.getBytes("utf-8"));
+        return Base64.getEncoder().withoutPadding().encodeToString(hash);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+
+    @Test
+    public void zeroIsStoredSeparately() {
+        LongHashSet set = new LongHashSet();
+        assertFalse(set.contains(0));
+
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+
+        assertTrue(set.add(1));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void valuesAreKeptAfterRehash() {
+        LongHashSet set = new LongHashSet(4);
+        int count = 10000;
+        for (long i = 1; i <= count; i++) {
+            assertTrue(set.add(i * 31));
+        }
+        assertEquals(count, set.size());
+
+        for (long i = 1; i <= count; i++) {
+            assertTrue(set.contains(i * 31));
+            assertFalse(set.add(i * 31));
+        }
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(-31));
+        assertEquals(count, set.size());
+    }
+
+    @Test
+    public void negativeValuesAreSupported() {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.add(-1));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertTrue(set.contains(-1));
+        assertFalse(set.contains(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.io;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RcsPatchTest {
+
+    private static final String SOURCE = "! Title: Test\n||a.com^\n||b.com^\n||c.com^\n||d.com^\n";
+
+    @Test
+    public void linesAreAddedAndDeleted() throws IOException {
+        RcsPatch patch = RcsPatch.parse("d2 1\na3 2\n||c1.com^\n||c2.com^\nd5 1\na5 1\n||e.com^\n");
+        assertFalse(patch.isEmpty());
+
+        assertEquals("! Title: Test\n||b.com^\n||c1.com^\n||c2.com^\n||c.com^\n||e.com^", apply(patch, SOURCE));
+    }
+
+    @Test
+    public void linesAreAddedAtTheBeginning() throws IOException {
+        RcsPatch patch = RcsPatch.parse("diff name:test checksum:abc lines:2\na0 1\n! Version: 2\n");
+        assertEquals("! Version: 2\n! Title: Test\n||a.com^\n||b.com^\n||c.com^\n||d.com^", apply(patch, SOURCE));
+    }
+
+    @Test
+    public void emptyLinesAreKept() throws IOException {
+        RcsPatch patch = RcsPatch.parse("a1 2\n\n||x.com^\n");
+        assertEquals("! Title: Test\n\n||x.com^\n||a.com^\n||b.com^\n||c.com^\n||d.com^", apply(patch, SOURCE));
+    }
+
+    @Test
+    public void emptyPatchKeepsSource() throws IOException {
+        RcsPatch patch = RcsPatch.parse("");
+        assertTrue(patch.isEmpty());
+        assertEquals("! Title: Test\n||a.com^\n||b.com^\n||c.com^\n||d.com^", apply(patch, SOURCE));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidCommandIsRejected() throws IOException {
+        RcsPatch.parse("c2 1\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void commandsOutOfOrderAreRejected() throws IOException {
+        RcsPatch.parse("d4 1\nd2 1\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedPatchIsRejected() throws IOException {
+        RcsPatch.parse("a1 3\n||x.com^\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void patchNotMatchingSourceIsRejected() throws IOException {
+        apply(RcsPatch.parse("d5 3\n"), SOURCE);
+    }
+
+    private static String apply(RcsPatch patch, String source) throws IOException {
+        List<String> lines = new ArrayList<>();
+        patch.apply(new BufferedReader(new StringReader(source)), lines::add);
+        return StringUtils.join(lines, '\n');
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.io;
+
+import com.adguard.android.contentblocker.commons.HashUtils;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RuleStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rulesAreReadBackBySections() throws IOException {
+        File file = folder.newFile("rules.store");
+        RuleStoreWriter writer = new RuleStoreWriter(file, 42);
+        try {
+            writer.write("||example.org^");
+            writer.write("example.org##.ad");
+            writer.write("! comment");
+            writer.write("||пример.рф^");
+            writer.write("##.banner");
+            writer.write("@@||example.org^$document");
+        } finally {
+            writer.close();
+        }
+
+        RuleStoreReader reader = new RuleStoreReader(file);
+        try {
+            assertEquals(42, reader.getSourceStamp());
+            assertEquals(2, reader.getCount(RuleType.NETWORK));
+            assertEquals(1, reader.getCount(RuleType.WHITELIST));
+            assertEquals(1, reader.getCount(RuleType.COMMENT));
+            assertEquals(2, reader.getCount(RuleType.CSS));
+            assertEquals(0, reader.getCount(RuleType.SCRIPT));
+
+            assertEquals(Arrays.asList("||example.org^", "||пример.рф^"), readSection(reader, RuleType.NETWORK));
+            assertEquals(Arrays.asList("example.org##.ad", "##.banner"), readSection(reader, RuleType.CSS));
+            assertEquals(Arrays.asList("@@||example.org^$document"), readSection(reader, RuleType.WHITELIST));
+            assertEquals(Arrays.asList("! comment"), readSection(reader, RuleType.COMMENT));
+            assertTrue(readSection(reader, RuleType.SCRIPT).isEmpty());
+
+            // Sections can be selected again in any order
+            assertEquals(Arrays.asList("||example.org^", "||пример.рф^"), readSection(reader, RuleType.NETWORK));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void emptyStoreHasNoRules() throws IOException {
+        File file = folder.newFile("empty.store");
+        new RuleStoreWriter(file, 1).close();
+
+        RuleStoreReader reader = new RuleStoreReader(file);
+        try {
+            for (RuleType type : RuleType.values()) {
+                assertEquals(0, reader.getCount(type));
+                reader.select(type);
+                assertFalse(reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidFileIsRejected() throws IOException {
+        File file = folder.newFile("invalid.store");
+        FileUtils.writeStringToFile(file, "||example.org^\n", "utf-8");
+        new RuleStoreReader(file).close();
+    }
+
+    private static List<String> readSection(RuleStoreReader reader, RuleType type) throws IOException {
+        List<String> rules = new ArrayList<>();
+        reader.select(type);
+        while (reader.next()) {
+            assertEquals(type, reader.getType());
+            assertEquals(HashUtils.fingerprint(reader.getRule()), reader.getFingerprint());
+            rules.add(reader.getRule());
+        }
+        return rules;
+    }
+}
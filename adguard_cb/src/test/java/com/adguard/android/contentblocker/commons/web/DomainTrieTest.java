@@ -0,0 +1,109 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.commons.web;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DomainTrieTest {
+
+    @Test
+    public void subdomainsMatchParentDomain() {
+        DomainTrie trie = new DomainTrie();
+        assertTrue(trie.add("example.org", true));
+
+        assertTrue(trie.matches("example.org"));
+        assertTrue(trie.matches("www.example.org"));
+        assertTrue(trie.matches("a.b.example.org"));
+        assertTrue(trie.matches(" WWW.Example.ORG "));
+
+        assertFalse(trie.matches("org"));
+        assertFalse(trie.matches("badexample.org"));
+        assertFalse(trie.matches("example.org.com"));
+        assertFalse(trie.matches(""));
+    }
+
+    @Test
+    public void disabledDomainsDoNotMatch() {
+        DomainTrie trie = new DomainTrie();
+        trie.add("example.org", false);
+        trie.add("ads.example.org", true);
+
+        assertTrue(trie.contains("example.org"));
+        assertFalse(trie.matches("example.org"));
+        assertFalse(trie.matches("www.example.org"));
+        assertTrue(trie.matches("cdn.ads.example.org"));
+
+        trie.setEnabled("example.org", true);
+        assertTrue(trie.matches("www.example.org"));
+        assertTrue(trie.hasEnabledParent("ads.example.org"));
+        assertFalse(trie.hasEnabledParent("example.org"));
+    }
+
+    @Test
+    public void existingDomainIsNotChanged() {
+        DomainTrie trie = new DomainTrie();
+        assertTrue(trie.add("example.org", true));
+        assertFalse(trie.add("Example.org", false));
+        assertTrue(trie.matches("example.org"));
+        assertEquals(1, trie.size());
+    }
+
+    @Test
+    public void removalKeepsSubdomains() {
+        DomainTrie trie = new DomainTrie();
+        trie.add("example.org", true);
+        trie.add("ads.example.org", true);
+        assertEquals(2, trie.size());
+
+        assertTrue(trie.remove("example.org"));
+        assertFalse(trie.remove("example.org"));
+        assertEquals(1, trie.size());
+        assertFalse(trie.contains("example.org"));
+        assertFalse(trie.matches("www.example.org"));
+        assertTrue(trie.matches("cdn.ads.example.org"));
+
+        assertTrue(trie.remove("ads.example.org"));
+        assertTrue(trie.isEmpty());
+        assertFalse(trie.matches("ads.example.org"));
+    }
+
+    @Test
+    public void removalOfMissingDomainDoesNothing() {
+        DomainTrie trie = new DomainTrie();
+        trie.add("ads.example.org", true);
+
+        assertFalse(trie.remove("example.org"));
+        assertFalse(trie.remove("other.org"));
+        assertFalse(trie.remove(""));
+        assertEquals(1, trie.size());
+        assertTrue(trie.matches("ads.example.org"));
+
+        // The domain can be added again after removal
+        assertTrue(trie.remove("ads.example.org"));
+        assertTrue(trie.add("ads.example.org", true));
+        assertTrue(trie.matches("ads.example.org"));
+    }
+
+    @Test
+    public void domainsAreNormalized() {
+        assertEquals("example.org", DomainTrie.normalize("  Example.ORG "));
+    }
+}
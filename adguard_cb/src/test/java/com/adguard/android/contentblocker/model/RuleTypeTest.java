@@ -0,0 +1,70 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RuleTypeTest {
+
+    @Test
+    public void classifiesComments() {
+        assertEquals(RuleType.COMMENT, RuleType.classify("! Title: AdGuard Base filter"));
+        assertEquals(RuleType.COMMENT, RuleType.classify("[Adblock Plus 2.0]"));
+        assertEquals(RuleType.COMMENT, RuleType.classify(""));
+        assertEquals(RuleType.COMMENT, RuleType.classify("   "));
+    }
+
+    @Test
+    public void classifiesNetworkRules() {
+        assertEquals(RuleType.NETWORK, RuleType.classify("||example.org^"));
+        assertEquals(RuleType.NETWORK, RuleType.classify("||example.org^$third-party,domain=a.com"));
+        assertEquals(RuleType.NETWORK, RuleType.classify("/banner#"));
+        assertEquals(RuleType.WHITELIST, RuleType.classify("@@||example.org^$document"));
+    }
+
+    @Test
+    public void classifiesCosmeticRules() {
+        assertEquals(RuleType.CSS, RuleType.classify("##.ad"));
+        assertEquals(RuleType.CSS, RuleType.classify("example.org##.ad"));
+        assertEquals(RuleType.CSS, RuleType.classify("example.org#@#.ad"));
+        assertEquals(RuleType.CSS_INJECT, RuleType.classify("example.org#$#.ad { display: none!important; }"));
+        assertEquals(RuleType.CSS_INJECT, RuleType.classify("example.org#@$#.ad { display: none!important; }"));
+        assertEquals(RuleType.SCRIPT, RuleType.classify("example.org#%#window.ad = null;"));
+        assertEquals(RuleType.SCRIPT, RuleType.classify("example.org#@%#window.ad = null;"));
+        assertEquals(RuleType.CONTENT, RuleType.classify("example.org$$script[data-src=\"banner\"]"));
+        assertEquals(RuleType.CONTENT, RuleType.classify("example.org$@$script[data-src=\"banner\"]"));
+    }
+
+    @Test
+    public void firstMarkerDefinesType() {
+        assertEquals(RuleType.CSS, RuleType.classify("example.org##a[href$=\"#$#\"]"));
+        assertEquals(RuleType.SCRIPT, RuleType.classify("example.org#%#var s = '##';"));
+    }
+
+    @Test
+    public void codesAreStable() {
+        for (RuleType type : RuleType.values()) {
+            assertSame(type, RuleType.fromCode(type.getCode()));
+        }
+        assertNull(RuleType.fromCode((byte) -1));
+        assertNull(RuleType.fromCode((byte) RuleType.values().length));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CosmeticRulesMergerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rulesWithSameSelectorAreMerged() throws IOException {
+        List<String> output = merge(Arrays.asList(
+                "a.com##.ad", "b.com,c.com##.ad", "y.com##.solo", "e.com##.ad", "a.com##.ad"));
+        assertEquals(Arrays.asList("a.com,b.com,c.com,e.com##.ad", "y.com##.solo"), output);
+    }
+
+    @Test
+    public void genericRuleReplacesDomainSpecificOnes() throws IOException {
+        List<String> output = merge(Arrays.asList("x.com##.gen", "##.gen", "z.com##.gen", "a.com##.ad"));
+        assertEquals(Arrays.asList("##.gen", "a.com##.ad"), output);
+    }
+
+    @Test
+    public void domainSpecificRulesAreKeptForGenerichideExceptions() throws IOException {
+        File spillFile = new File(folder.getRoot(), "merger.tmp");
+        CosmeticRulesMerger merger = new CosmeticRulesMerger(spillFile);
+        try {
+            merger.addException("@@||idsly.com^$generichide");
+            merger.addException("@@||Other.org^$third-party,generichide");
+            merger.addException("@@||example.com^$elemhide");
+            merger.addException("@@||example.net^");
+            List<String> rules = Arrays.asList(
+                    "x.com##.gen", "idsly.com##.gen", "##.gen", "www.other.org##.gen", "example.com##.gen", "example.net##.gen");
+            for (String rule : rules) {
+                merger.addRule(rule, true);
+            }
+
+            List<String> output = new ArrayList<>();
+            for (String rule : rules) {
+                output.addAll(merger.merge(rule));
+            }
+            assertEquals(Arrays.asList("idsly.com,www.other.org##.gen", "##.gen"), output);
+        } finally {
+            merger.close();
+        }
+    }
+
+    @Test
+    public void genericRuleWhichMightBeDroppedDoesNotCover() throws IOException {
+        File spillFile = new File(folder.getRoot(), "merger.tmp");
+        CosmeticRulesMerger merger = new CosmeticRulesMerger(spillFile);
+        try {
+            merger.addRule("x.com##.gen", true);
+            merger.addRule("##.gen", false);
+            merger.addRule("z.com##.gen", true);
+
+            assertEquals(Collections.singletonList("x.com,z.com##.gen"), merger.merge("x.com##.gen"));
+            assertEquals(Collections.singletonList("##.gen"), merger.merge("##.gen"));
+            assertTrue(merger.merge("z.com##.gen").isEmpty());
+        } finally {
+            merger.close();
+        }
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void exceptionsAndExcludedDomainsAreNotMerged() throws IOException {
+        List<String> rules = Arrays.asList(
+                "a.com##.ad", "~d.com##.ad", "a.com#@#.ad", "[$path=/x]a.com##.ad", "b.com##.ad");
+        assertEquals(Arrays.asList("a.com,b.com##.ad", "~d.com##.ad", "a.com#@#.ad", "[$path=/x]a.com##.ad"),
+                merge(rules));
+    }
+
+    @Test
+    public void mergedRulesAreSplitBy100Domains() throws IOException {
+        List<String> rules = new ArrayList<>();
+        List<String> domains = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            String domain = "d" + i + ".com";
+            domains.add(domain);
+            rules.add(domain + "##.ad");
+        }
+
+        List<String> output = merge(rules);
+        assertEquals(Arrays.asList(
+                StringUtils.join(domains.subList(0, 100), ',') + "##.ad",
+                StringUtils.join(domains.subList(100, 200), ',') + "##.ad",
+                StringUtils.join(domains.subList(200, 250), ',') + "##.ad"), output);
+    }
+
+    @Test
+    public void savedBytesAreCounted() throws IOException {
+        File spillFile = new File(folder.getRoot(), "merger.tmp");
+        CosmeticRulesMerger merger = new CosmeticRulesMerger(spillFile);
+        try {
+            List<String> rules = Arrays.asList("a.com##.ad", "b.com##.ad");
+            for (String rule : rules) {
+                merger.addRule(rule, true);
+            }
+            for (String rule : rules) {
+                merger.merge(rule);
+            }
+            // "a.com##.ad\nb.com##.ad\n" is replaced with "a.com,b.com##.ad\n"
+            assertEquals(22 - 17, merger.getSavedBytes());
+        } finally {
+            merger.close();
+        }
+    }
+
+    private List<String> merge(List<String> rules) throws IOException {
+        File spillFile = new File(folder.getRoot(), "merger.tmp");
+        CosmeticRulesMerger merger = new CosmeticRulesMerger(spillFile);
+        try {
+            for (String rule : rules) {
+                merger.addRule(rule, true);
+            }
+
+            List<String> output = new ArrayList<>();
+            for (String rule : rules) {
+                output.addAll(merger.merge(rule));
+            }
+            return output;
+        } finally {
+            merger.close();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.android.contentblocker.commons.io.LineConsumer;
+import com.adguard.android.contentblocker.model.RuleType;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FiltersCompilerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File filesDir;
+    private FiltersCompiler compiler;
+    private File output;
+
+    @Before
+    public void setUp() throws IOException {
+        filesDir = folder.newFolder("files");
+        compiler = new FiltersCompiler(filesDir);
+        output = new File(folder.getRoot(), CompileProfile.SAMSUNG.getFileName());
+    }
+
+    @Test
+    public void onlyChangedSourceIsRebuilt() throws IOException {
+        TestRuleSource first = new TestRuleSource("first", "1", "||first.com^");
+        TestRuleSource second = new TestRuleSource("second", "1", "||second.com^");
+        compiler.compile(CompileProfile.DEFAULT, Arrays.<RuleSource>asList(first, second), output);
+        assertEquals(1, first.readCount);
+        assertEquals(1, second.readCount);
+
+        TestRuleSource changed = new TestRuleSource("second", "2", "||second.com^", "||changed.com^");
+        CompileResult result = compiler.compile(CompileProfile.DEFAULT, Arrays.<RuleSource>asList(first, changed), output);
+        assertEquals(1, first.readCount);
+        assertEquals(1, changed.readCount);
+        assertEquals(3, result.getRuleCount());
+        assertEquals(Arrays.asList("||first.com^", "||second.com^", "||changed.com^"), FileUtils.readLines(output, "utf-8"));
+    }
+
+    @Test
+    public void unchangedSourcesAreNotCompiled() throws IOException {
+        TestRuleSource source = new TestRuleSource("source", "1", "||example.org^", "example.org##.ad");
+        CompileResult first = compiler.compile(CompileProfile.DEFAULT, Arrays.<RuleSource>asList(source), output);
+        assertTrue(first.isChanged());
+        assertEquals(1, first.getVersion());
+
+        CompileResult second = compiler.compile(CompileProfile.DEFAULT, Arrays.<RuleSource>asList(source), output);
+        assertEquals(1, source.readCount);
+        assertFalse(second.isChanged());
+        assertEquals(first.getVersion(), second.getVersion());
+        assertEquals(first.getChecksum(), second.getChecksum());
+        assertEquals(2, second.getRuleCount());
+    }
+
+    @Test
+    public void newSnapshotIsPublishedOnlyWhenContentChanges() throws IOException {
+        compiler.compile(CompileProfile.DEFAULT,
+                Arrays.<RuleSource>asList(new TestRuleSource("source", "1", "||example.org^")), output);
+        File compressedOutput = FiltersCompiler.getCompressedOutput(output);
+        assertTrue(compressedOutput.exists());
+
+        // Source stamp has changed but its rules are the same
+        CompileResult result = compiler.compile(CompileProfile.DEFAULT,
+                Arrays.<RuleSource>asList(new TestRuleSource("source", "2", "||example.org^")), output);
+        assertFalse(result.isChanged());
+        assertEquals(1, result.getVersion());
+
+        result = compiler.compile(CompileProfile.DEFAULT,
+                Arrays.<RuleSource>asList(new TestRuleSource("source", "3", "||example.org^", "||example.com^")), output);
+        assertTrue(result.isChanged());
+        assertEquals(2, result.getVersion());
+        assertEquals(Arrays.asList("||example.org^", "||example.com^"), FileUtils.readLines(output, "utf-8"));
+        // Published state survives the compiler restart
+        CompileResult lastResult = new FiltersCompiler(filesDir).getLastResult(output);
+        assertEquals(2, lastResult.getVersion());
+        assertEquals(result.getChecksum(), lastResult.getChecksum());
+
+        GZIPInputStream inputStream = new GZIPInputStream(new FileInputStream(compressedOutput));
+        try {
+            assertEquals(Arrays.asList("||example.org^", "||example.com^"), IOUtils.readLines(inputStream, "utf-8"));
+        } finally {
+            inputStream.close();
+        }
+        // Nothing but the outputs is left next to them
+        assertEquals(new HashSet<>(Arrays.asList(output.getName(), compressedOutput.getName(), "files")),
+                new HashSet<>(Arrays.asList(folder.getRoot().list())));
+    }
+
+    @Test
+    public void duplicatesAndExcludedTypesAreNotWritten() throws IOException {
+        TestRuleSource first = new TestRuleSource("first", "1", "||example.org^", "example.org#%#window.ad = null;");
+        TestRuleSource second = new TestRuleSource("second", "1", "||example.org^", "example.org##.ad");
+        CompileResult result = compiler.compile(CompileProfile.SAMSUNG, Arrays.<RuleSource>asList(first, second), output);
+
+        assertEquals(2, result.getRuleCount());
+        assertEquals(Arrays.asList("||example.org^", "example.org##.ad"), FileUtils.readLines(output, "utf-8"));
+    }
+
+    @Test
+    public void exceptionsAreNotCutOffByRuleBudget() throws IOException {
+        int budget = CompileProfile.SAMSUNG.getRuleBudget();
+        List<String> first = new ArrayList<>();
+        for (int i = 0; i < budget; i++) {
+            first.add("||ads" + i + ".com^");
+        }
+        first.add("@@||first.com^$document");
+        first.add("first.com##.ad");
+        TestRuleSource second = new TestRuleSource("second", "1",
+                "||second.com^", "@@||second.com^$document", "second.com##.ad");
+
+        CompileResult result = compiler.compile(CompileProfile.SAMSUNG,
+                Arrays.<RuleSource>asList(new TestRuleSource("first", "1", first), second), output);
+
+        List<String> lines = FileUtils.readLines(output, "utf-8");
+        assertEquals(budget, result.getRuleCount());
+        assertEquals(budget, lines.size());
+        assertEquals(Arrays.asList("@@||first.com^$document", "@@||second.com^$document"), lines.subList(0, 2));
+        assertTrue(lines.contains("||ads" + (budget - 3) + ".com^"));
+        assertFalse(lines.contains("||ads" + (budget - 2) + ".com^"));
+        assertFalse(lines.contains("first.com##.ad"));
+        assertFalse(lines.contains("||second.com^"));
+    }
+
+    /**
+     * Rule source keeping its rules in memory
+     */
+    private static class TestRuleSource implements RuleSource {
+
+        private final String name;
+        private final String stamp;
+        private final List<String> rules;
+        private int readCount;
+
+        TestRuleSource(String name, String stamp, String... rules) {
+            this(name, stamp, Arrays.asList(rules));
+        }
+
+        TestRuleSource(String name, String stamp, List<String> rules) {
+            this.name = name;
+            this.stamp = stamp;
+            this.rules = rules;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getStamp() {
+            return stamp;
+        }
+
+        @Override
+        public void readRules(LineConsumer consumer) throws IOException {
+            readCount++;
+            for (String rule : rules) {
+                consumer.accept(rule);
+            }
+        }
+
+        @Override
+        public File getRuleStore() {
+            return null;
+        }
+
+        @Override
+        public boolean isRuleTypeIncluded(RuleType ruleType) {
+            return true;
+        }
+    }
+}
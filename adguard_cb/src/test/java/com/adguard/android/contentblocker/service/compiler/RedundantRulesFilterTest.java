@@ -0,0 +1,102 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RedundantRulesFilterTest {
+
+    @Test
+    public void rulesCoveredByParentDomainAreRedundant() {
+        RedundantRulesFilter filter = newFilter("||example.org^");
+        assertTrue(filter.hasCoveringRules());
+
+        assertTrue(filter.isRedundant("||ads.example.org^"));
+        assertTrue(filter.isRedundant("||Ads.Example.org^"));
+        assertTrue(filter.isRedundant("||example.org/banner.js"));
+        assertTrue(filter.isRedundant("||ads.example.org^$third-party,script"));
+        assertEquals(4, filter.getRedundantRulesCount());
+
+        // The covering rule itself is kept
+        assertFalse(filter.isRedundant("||example.org^"));
+        assertFalse(filter.isRedundant("||badexample.org^"));
+        assertFalse(filter.isRedundant("||example.org.com^"));
+        assertFalse(filter.isRedundant("||example.org*"));
+        assertFalse(filter.isRedundant("||example.org:8080^"));
+        assertFalse(filter.isRedundant("|https://example.org^"));
+        assertFalse(filter.isRedundant("@@||ads.example.org^"));
+        // Modifiers which change the matched requests or the action
+        assertFalse(filter.isRedundant("||ads.example.org^$important"));
+        assertFalse(filter.isRedundant("||ads.example.org^$replace=/a/b/"));
+        assertEquals(4, filter.getRedundantRulesCount());
+    }
+
+    @Test
+    public void domainModifierOnlyNarrowsRule() {
+        RedundantRulesFilter filter = newFilter("||example.org^");
+        assertTrue(filter.isRedundant("||ads.example.org^$domain=a.com|~b.com"));
+        assertTrue(filter.isRedundant("||example.org/ads/$domain=a.com,~third-party"));
+    }
+
+    @Test
+    public void rulesWithDomainModifierDoNotCover() {
+        RedundantRulesFilter filter = newFilter("||example.org^$domain=a.com", "||other.org^$third-party");
+        assertFalse(filter.hasCoveringRules());
+        assertFalse(filter.isRedundant("||ads.example.org^"));
+        assertFalse(filter.isRedundant("||ads.other.org^"));
+    }
+
+    @Test
+    public void badfilterDisablesCoveringRule() {
+        RedundantRulesFilter filter = newFilter("||example.org^", "||example.org^$badfilter", "||other.org^");
+        assertFalse(filter.isRedundant("||ads.example.org^"));
+        assertFalse(filter.isRedundant("||example.org/banner.js"));
+        assertTrue(filter.isRedundant("||ads.other.org^"));
+    }
+
+    @Test
+    public void badfilterWithRestrictionsDisablesCoveringRule() {
+        RedundantRulesFilter filter = newFilter("||example.org^", "||Example.org^$domain=a.com,badfilter");
+        assertFalse(filter.isRedundant("||ads.example.org^"));
+    }
+
+    @Test
+    public void rulesWhichMightBeDroppedDoNotCover() {
+        RedundantRulesFilter filter = new RedundantRulesFilter();
+        filter.addRule("||example.org^", false);
+        assertFalse(filter.hasCoveringRules());
+        assertFalse(filter.isRedundant("||ads.example.org^"));
+    }
+
+    @Test
+    public void invalidDomainsDoNotCover() {
+        RedundantRulesFilter filter = newFilter("||.org^", "||example..org^", "||exa*mple.org^");
+        assertFalse(filter.hasCoveringRules());
+    }
+
+    private static RedundantRulesFilter newFilter(String... rules) {
+        RedundantRulesFilter filter = new RedundantRulesFilter();
+        for (String rule : rules) {
+            filter.addRule(rule, true);
+        }
+        return filter;
+    }
+}